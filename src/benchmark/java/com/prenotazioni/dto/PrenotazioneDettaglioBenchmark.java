@@ -0,0 +1,105 @@
+package com.prenotazioni.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Costo di una pagina di RIGHE righe di dettaglio: vecchia HashMap con 21 chiavi contro il record
+// PrenotazioneDettaglio, solo costruzione e costruzione più serializzazione JSON. I byte allocati per
+// operazione (gc.alloc.rate.norm) si leggono con il profiler gc:
+//   mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="PrenotazioneDettaglio -prof gc"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrenotazioneDettaglioBenchmark {
+
+    private static final int RIGHE = 1000;
+
+    private static final LocalDateTime ISTANTE = LocalDateTime.of(2030, 1, 1, 9, 0);
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .registerModule(new JavaTimeModule())
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Benchmark
+    public List<Map<String, Object>> righeMappa() {
+        List<Map<String, Object>> righe = new ArrayList<>(RIGHE);
+        for (long i = 0; i < RIGHE; i++) {
+            righe.add(mappa(i));
+        }
+        return righe;
+    }
+
+    @Benchmark
+    public List<PrenotazioneDettaglio> righeRecord() {
+        List<PrenotazioneDettaglio> righe = new ArrayList<>(RIGHE);
+        for (long i = 0; i < RIGHE; i++) {
+            righe.add(record(i));
+        }
+        return righe;
+    }
+
+    @Benchmark
+    public byte[] jsonMappa() throws Exception {
+        return objectMapper.writeValueAsBytes(righeMappa());
+    }
+
+    @Benchmark
+    public byte[] jsonRecord() throws Exception {
+        return objectMapper.writeValueAsBytes(righeRecord());
+    }
+
+    // La riga come veniva costruita prima del record
+    private static Map<String, Object> mappa(long id) {
+        Map<String, Object> riga = new HashMap<>();
+        riga.put("prenotazioneId", id);
+        riga.put("inizio", ISTANTE);
+        riga.put("fine", ISTANTE.plusHours(2));
+        riga.put("stato", StatoPrenotazione.PRENOTATA);
+        riga.put("notePrenotazione", "lezione");
+        riga.put("dataCreazione", ISTANTE);
+        riga.put("aulaId", 1L);
+        riga.put("aulaNome", "A1");
+        riga.put("aulaCapienza", 30);
+        riga.put("aulaPiano", 0);
+        riga.put("utenteId", 2L);
+        riga.put("username", "mario");
+        riga.put("utenteNome", "Mario");
+        riga.put("email", "mario@example.com");
+        riga.put("ruolo", "user");
+        riga.put("utenteRegistrato", ISTANTE);
+        riga.put("ultimoAccesso", ISTANTE);
+        riga.put("corsoId", 1L);
+        riga.put("corsoNome", "Analisi");
+        riga.put("docente", "Rossi");
+        riga.put("statoTemporale", "FUTURA");
+        return riga;
+    }
+
+    private static PrenotazioneDettaglio record(long id) {
+        return new PrenotazioneDettaglio(id, ISTANTE, ISTANTE.plusHours(2), StatoPrenotazione.PRENOTATA, "lezione", ISTANTE,
+            1L, "A1", 30, 0, 2L, "mario", "Mario", "mario@example.com", "user", ISTANTE, ISTANTE,
+            1L, "Analisi", "Rossi", "FUTURA");
+    }
+}
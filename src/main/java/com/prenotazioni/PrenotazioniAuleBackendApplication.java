@@ -2,8 +2,10 @@ package com.prenotazioni;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class PrenotazioniAuleBackendApplication {
     public static void main(String[] args) {
         SpringApplication.run(PrenotazioniAuleBackendApplication.class, args);
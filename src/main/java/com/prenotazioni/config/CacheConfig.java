@@ -0,0 +1,66 @@
+package com.prenotazioni.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Cache di secondo livello di Hibernate (JCache con Caffeine, in memoria nel processo) per aule, corsi e utenti
+// e per le query di elenco delle aule. Le modifiche fatte tramite JPA aggiornano o invalidano la cache nella
+// stessa transazione; le modifiche fatte da altre istanze vengono viste allo scadere del TTL.
+@Configuration
+public class CacheConfig {
+
+    public static final String REGIONE_AULE = "aule";
+    public static final String REGIONE_CORSI = "corsi";
+    public static final String REGIONE_UTENTI = "utenti";
+
+    public static final List<String> REGIONI_ENTITA = List.of(REGIONE_AULE, REGIONE_CORSI, REGIONE_UTENTI);
+
+    @Value("${prenotazioni.cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${prenotazioni.cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Bean(destroyMethod = "close")
+    public CacheManager cacheManagerHibernate() {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        // Un CacheManager per contesto: quello di default è unico nel processo e non ammette regioni con lo stesso nome
+        CacheManager cacheManager = provider.getCacheManager(URI.create("prenotazioni-" + UUID.randomUUID()),
+            provider.getDefaultClassLoader());
+        for (String regione : REGIONI_ENTITA) {
+            cacheManager.createCache(regione, limitata());
+        }
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME, limitata());
+        // Istanti di ultima modifica delle tabelle, usati per invalidare i risultati delle query: mai rimossi
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, new CaffeineConfiguration<>());
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer cacheDiSecondoLivello(CacheManager cacheManagerHibernate) {
+        return proprieta -> proprieta.put(ConfigSettings.CACHE_MANAGER, cacheManagerHibernate);
+    }
+
+    private CaffeineConfiguration<Object, Object> limitata() {
+        CaffeineConfiguration<Object, Object> configurazione = new CaffeineConfiguration<>();
+        configurazione.setMaximumSize(OptionalLong.of(maxSize));
+        configurazione.setExpireAfterWrite(OptionalLong.of(TimeUnit.SECONDS.toNanos(ttlSeconds)));
+        return configurazione;
+    }
+}
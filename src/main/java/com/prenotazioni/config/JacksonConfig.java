@@ -0,0 +1,20 @@
+package com.prenotazioni.config;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.prenotazioni.dto.PrenotazioneSummary;
+
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JacksonConfig {
+
+    // Filtro di default per i DTO con campi selezionabili: senza ?fields= vengono scritti tutti i campi
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer filtriCampi() {
+        return builder -> builder.filters(new SimpleFilterProvider()
+            .addFilter(PrenotazioneSummary.FILTRO, SimpleBeanPropertyFilter.serializeAll()));
+    }
+}
@@ -1,5 +1,6 @@
 package com.prenotazioni.config;
 
+import com.prenotazioni.service.JwtPrincipal;
 import com.prenotazioni.service.JwtService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -27,9 +28,10 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             token = authHeader.substring(7);
         }
-        if (token != null && jwtService.validateToken(token)) {
-            String email = jwtService.getEmailFromToken(token);
-            UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(email, null, java.util.Collections.emptyList());
+        // Il token viene verificato una sola volta: il principal resta nel SecurityContext per i controller
+        JwtPrincipal principal = token != null ? jwtService.parseToken(token) : null;
+        if (principal != null) {
+            UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(principal, null, principal.authorities());
             auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
             SecurityContextHolder.getContext().setAuthentication(auth);
         }
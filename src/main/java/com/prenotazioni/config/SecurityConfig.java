@@ -1,31 +1,60 @@
 package com.prenotazioni.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.io.IOException;
+import java.util.Collections;
+
 @Configuration
 public class SecurityConfig {
     @Autowired
     private JwtAuthFilter jwtAuthFilter;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http
             .csrf(csrf -> csrf.disable())
             .authorizeHttpRequests(auth -> auth
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll() // Risposte in streaming: la richiesta è già stata autorizzata
                 .requestMatchers("/api/auth/login", "/api/auth/register", "/h2-console/**").permitAll()
                 .requestMatchers("/api/me").authenticated()
-                .requestMatchers("/api/admin/**").authenticated() // Tutti gli endpoint admin richiedono autenticazione
+                .requestMatchers("/api/admin/**").hasRole("ADMIN") // Endpoint admin riservati al ruolo admin
+                .requestMatchers(HttpMethod.POST, "/api/prenotazioni/blocca").hasRole("ADMIN") // Solo gli admin possono bloccare le aule
                 .requestMatchers("/api/rooms/**").authenticated() // Endpoint aule accessibile a tutti gli utenti autenticati
                 .requestMatchers("/api/prenotazioni/**").authenticated() // Endpoint prenotazioni accessibile a tutti gli utenti autenticati
                 .anyRequest().authenticated()
             )
+            .exceptionHandling(ex -> ex
+                // Token assente o non valido
+                .authenticationEntryPoint((request, response, e) ->
+                    scriviErrore(response, HttpServletResponse.SC_UNAUTHORIZED, "Token di autorizzazione mancante o non valido"))
+                // Autenticato ma senza il ruolo richiesto
+                .accessDeniedHandler((request, response, e) ->
+                    scriviErrore(response, HttpServletResponse.SC_FORBIDDEN, "Accesso negato: solo gli amministratori possono accedere"))
+            )
             .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class)
             .headers(headers -> headers.frameOptions().disable()); // Per H2 console
         return http.build();
     }
+
+    // Stesso formato di errore dei controller: {"error": "..."}
+    private void scriviErrore(HttpServletResponse response, int status, String messaggio) throws IOException {
+        response.setStatus(status);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        objectMapper.writeValue(response.getOutputStream(), Collections.singletonMap("error", messaggio));
+    }
 }
@@ -2,7 +2,7 @@ package com.prenotazioni.controller;
 
 import com.prenotazioni.model.Utente;
 import com.prenotazioni.repository.UtenteRepository;
-import com.prenotazioni.service.JwtService;
+import com.prenotazioni.service.JwtPrincipal;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -18,8 +18,8 @@ public class MeController {
 
     @GetMapping
     public ResponseEntity<?> getMe(Authentication authentication) {
-        String email = (String) authentication.getPrincipal();
-        Utente utente = utenteRepository.findByEmail(email);
+        JwtPrincipal principal = (JwtPrincipal) authentication.getPrincipal();
+        Utente utente = utenteRepository.findByEmail(principal.email());
         if (utente == null) {
             return ResponseEntity.notFound().build();
         }
@@ -1,17 +1,34 @@
 package com.prenotazioni.controller;
 
+import com.prenotazioni.dto.FinestraTemporale;
+import com.prenotazioni.dto.Pagina;
+import com.prenotazioni.dto.PrenotazioneDettaglio;
+import com.prenotazioni.dto.PrenotazioneSummary;
+import com.prenotazioni.dto.RegolaRicorrenza;
+import com.prenotazioni.dto.RisultatoSerie;
+import com.prenotazioni.dto.StatoAula;
 import com.prenotazioni.model.Prenotazione;
 import com.prenotazioni.service.PrenotazioneService;
-import com.prenotazioni.service.JwtService;
+import com.prenotazioni.service.JwtPrincipal;
+import com.prenotazioni.service.StatoAuleService;
+import com.prenotazioni.service.VersioniDati;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -23,7 +40,14 @@ public class PrenotazioneController {
     private PrenotazioneService prenotazioneService;
     
     @Autowired
-    private JwtService jwtService;
+    private StatoAuleService statoAuleService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    // ETag delle letture: con If-None-Match uguale si risponde 304 prima di leggere i dati
+    @Autowired
+    private VersioniDati versioniDati;
     
     // DTO per le richieste di prenotazione
     public static class PrenotazioneRequest {
@@ -46,35 +70,38 @@ public class PrenotazioneController {
         public void setDescrizione(String descrizione) { this.descrizione = descrizione; }
     }
     
-    // Metodo privato per verificare autenticazione
-    private ResponseEntity<?> checkAuth(String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            return new ResponseEntity<>(
-                Collections.singletonMap("error", "Token di autorizzazione mancante"),
-                HttpStatus.UNAUTHORIZED
-            );
-        }
-
-        String token = authHeader.substring(7);
-        if (!jwtService.validateToken(token)) {
-            return new ResponseEntity<>(
-                Collections.singletonMap("error", "Token non valido"),
-                HttpStatus.UNAUTHORIZED
-            );
-        }
-        return null; // Auth OK
+    // DTO per le serie di lezioni: prima occorrenza (inizio/fine) più la regola di ripetizione
+    public static class SerieRequest extends PrenotazioneRequest {
+        private String frequenza; // DAILY, WEEKLY, MONTHLY
+        private Integer intervallo; // ogni quante unità di frequenza (default 1)
+        private Integer ripetizioni; // numero di occorrenze
+        private String finoA; // oppure: ultima data inclusa, formato "2025-06-30"
+        
+        // Getters e Setters
+        public String getFrequenza() { return frequenza; }
+        public void setFrequenza(String frequenza) { this.frequenza = frequenza; }
+        public Integer getIntervallo() { return intervallo; }
+        public void setIntervallo(Integer intervallo) { this.intervallo = intervallo; }
+        public Integer getRipetizioni() { return ripetizioni; }
+        public void setRipetizioni(Integer ripetizioni) { this.ripetizioni = ripetizioni; }
+        public String getFinoA() { return finoA; }
+        public void setFinoA(String finoA) { this.finoA = finoA; }
+    }
+    
+    // Risposta per parametri cursor/size non validi
+    private ResponseEntity<?> paginazioneNonValida(IllegalArgumentException e) {
+        return new ResponseEntity<>(
+            Collections.singletonMap("error", "Parametri di paginazione non validi: " + e.getMessage()),
+            HttpStatus.BAD_REQUEST
+        );
     }
     
     // Prenota un'aula
     @PostMapping("/prenota")
     public ResponseEntity<?> prenotaAula(@RequestBody PrenotazioneRequest request,
-                                        @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) return authCheck;
-        
+                                        @AuthenticationPrincipal JwtPrincipal principal) {
         try {
-            String token = authHeader.substring(7);
-            Long utenteId = jwtService.getUserIdFromToken(token);
+            Long utenteId = principal.id();
             
             LocalDateTime inizio = LocalDateTime.parse(request.getInizio());
             LocalDateTime fine = LocalDateTime.parse(request.getFine());
@@ -109,24 +136,74 @@ public class PrenotazioneController {
         }
     }
     
-    // Blocca un'aula (solo admin)
-    @PostMapping("/blocca")
-    public ResponseEntity<?> bloccaAula(@RequestBody PrenotazioneRequest request,
-                                       @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) return authCheck;
-        
-        String token = authHeader.substring(7);
-        String ruolo = jwtService.getRuoloFromToken(token);
-        if (!"admin".equals(ruolo)) {
+    // Prenota una serie ricorrente di lezioni (es. ogni settimana per un semestre) in un'unica operazione
+    @PostMapping("/serie")
+    public ResponseEntity<?> prenotaSerie(@RequestBody SerieRequest request,
+                                         @AuthenticationPrincipal JwtPrincipal principal) {
+        if (request.getAulaId() == null || request.getInizio() == null || request.getFine() == null) {
             return new ResponseEntity<>(
-                Collections.singletonMap("error", "Solo gli amministratori possono bloccare le aule"),
-                HttpStatus.FORBIDDEN
+                Collections.singletonMap("error", "Campi richiesti: aulaId, inizio, fine"),
+                HttpStatus.BAD_REQUEST
+            );
+        }
+        List<RegolaRicorrenza.Occorrenza> occorrenze;
+        try {
+            RegolaRicorrenza regola = RegolaRicorrenza.daParametri(
+                request.getFrequenza(), request.getIntervallo(), request.getRipetizioni(), request.getFinoA());
+            occorrenze = regola.espandi(LocalDateTime.parse(request.getInizio()), LocalDateTime.parse(request.getFine()));
+        } catch (DateTimeParseException e) {
+            return new ResponseEntity<>(
+                Collections.singletonMap("error", "Formato data non valido. Usa: YYYY-MM-DDTHH:MM:SS"),
+                HttpStatus.BAD_REQUEST
+            );
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                Collections.singletonMap("error", "Regola di ripetizione non valida: " + e.getMessage()),
+                HttpStatus.BAD_REQUEST
             );
         }
         
         try {
-            Long utenteId = jwtService.getUserIdFromToken(token);
+            RisultatoSerie risultato = prenotazioneService.prenotaSerie(
+                request.getAulaId(), request.getCorsoId(), principal.id(), occorrenze, request.getDescrizione());
+            
+            if (risultato == null) {
+                return new ResponseEntity<>(
+                    Collections.singletonMap("error", "Impossibile prenotare la serie: dati non validi o aula occupata"),
+                    HttpStatus.BAD_REQUEST
+                );
+            }
+            if (risultato.haConflitti()) {
+                return new ResponseEntity<>(
+                    Map.of("error", "Alcune occorrenze della serie sono già occupate", "conflitti", risultato.conflitti()),
+                    HttpStatus.CONFLICT
+                );
+            }
+            
+            return new ResponseEntity<>(
+                Map.of(
+                    "message", "Serie prenotata con successo",
+                    "prenotazioni", risultato.prenotazioni(),
+                    "totalPrenotazioni", risultato.prenotazioni().size()
+                ),
+                HttpStatus.CREATED
+            );
+            
+        } catch (Exception e) {
+            return new ResponseEntity<>(
+                Collections.singletonMap("error", "Errore interno del server"),
+                HttpStatus.INTERNAL_SERVER_ERROR
+            );
+        }
+    }
+    
+    // Blocca un'aula (solo admin)
+    @PostMapping("/blocca")
+    public ResponseEntity<?> bloccaAula(@RequestBody PrenotazioneRequest request,
+                                       @AuthenticationPrincipal JwtPrincipal principal) {
+        // Il ruolo admin è verificato da SecurityConfig
+        try {
+            Long utenteId = principal.id();
             LocalDateTime inizio = LocalDateTime.parse(request.getInizio());
             LocalDateTime fine = LocalDateTime.parse(request.getFine());
             
@@ -179,10 +256,11 @@ public class PrenotazioneController {
         }
     }
     
-    // Stato attuale di un'aula
-    @GetMapping("/stato/{aulaId}")
+    // Stato attuale di un'aula (dall'istantanea in memoria; database solo per aule non ancora presenti)
+    @GetMapping("/stato/{aulaId:\\d+}") // Solo numeri: "/stato/{stato}" (lettere) elenca le prenotazioni per stato
     public ResponseEntity<?> getStatoAula(@PathVariable Long aulaId) {
-        String stato = prenotazioneService.getStatoAula(aulaId, LocalDateTime.now());
+        StatoAula statoAula = statoAuleService.getStato(aulaId);
+        String stato = statoAula != null ? statoAula.stato() : prenotazioneService.getStatoAula(aulaId, LocalDateTime.now());
         
         return new ResponseEntity<>(
             Map.of("aulaId", aulaId, "stato", stato, "timestamp", LocalDateTime.now()),
@@ -190,32 +268,26 @@ public class PrenotazioneController {
         );
     }
     
-    // Lista prenotazioni utente
+    // Lista prenotazioni utente (formato sintetico, ?fields= opzionale)
     @GetMapping("/mie")
-    public ResponseEntity<?> getMiePrenotazioni(@RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) return authCheck;
-        
-        String token = authHeader.substring(7);
-        Long utenteId = jwtService.getUserIdFromToken(token);
+    public ResponseEntity<?> getMiePrenotazioni(@AuthenticationPrincipal JwtPrincipal principal,
+                                                @RequestParam(required = false) String fields,
+                                                ServletWebRequest request) {
+        Long utenteId = principal.id();
+        if (versioniDati.nonModificato(request, versioniDati.etagPrenotazioni(false) + "-utente" + utenteId)) {
+            return null;
+        }
         
         List<Prenotazione> prenotazioni = prenotazioneService.getPrenotazioniUtente(utenteId);
         
-        return new ResponseEntity<>(
-            Collections.singletonMap("prenotazioni", prenotazioni),
-            HttpStatus.OK
-        );
+        return conCampi(Collections.singletonMap("prenotazioni", PrenotazioneSummary.da(prenotazioni)), fields);
     }
     
     // Annulla prenotazione
     @DeleteMapping("/{prenotazioneId}")
     public ResponseEntity<?> annullaPrenotazione(@PathVariable Long prenotazioneId,
-                                                @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) return authCheck;
-        
-        String token = authHeader.substring(7);
-        Long utenteId = jwtService.getUserIdFromToken(token);
+                                                @AuthenticationPrincipal JwtPrincipal principal) {
+        Long utenteId = principal.id();
         
         boolean annullata = prenotazioneService.annullaPrenotazione(prenotazioneId, utenteId);
         
@@ -234,36 +306,40 @@ public class PrenotazioneController {
 
     // ========== NUOVI ENDPOINT PER GESTIONE PRENOTAZIONI ==========
 
-    // Lista tutte le prenotazioni (semplice) - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
+    // Lista tutte le prenotazioni (formato sintetico, ?fields= opzionale) - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
     @GetMapping
-    public ResponseEntity<?> getAllPrenotazioni(@RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getAllPrenotazioni(@RequestParam(required = false) String cursor,
+                                                @RequestParam(required = false) Integer size,
+                                                @RequestParam(required = false) String fields,
+                                                ServletWebRequest request) {
+        Pagina.Cursore cursore;
+        int dimensione;
+        try {
+            cursore = Pagina.Cursore.decodifica(cursor);
+            dimensione = Pagina.dimensione(size);
+        } catch (IllegalArgumentException e) {
+            return paginazioneNonValida(e);
         }
-
-        List<Prenotazione> prenotazioni = prenotazioneService.getAllPrenotazioni();
-        if (prenotazioni == null || prenotazioni.isEmpty()) {
+        if (versioniDati.nonModificato(request, versioniDati.etagPrenotazioni(false))) {
+            return null;
+        }
+        Pagina<Prenotazione> pagina = prenotazioneService.getAllPrenotazioni(cursore, dimensione);
+        if (pagina.contenuto().isEmpty() && cursor == null) {
             return new ResponseEntity<>(
                 Collections.singletonMap("message", "Nessuna prenotazione trovata"),
                 HttpStatus.OK
             );
         }
 
-        return new ResponseEntity<>(
-            Collections.singletonMap("prenotazioni", prenotazioni),
-            HttpStatus.OK
-        );
+        Map<String, Object> risposta = new HashMap<>();
+        risposta.put("prenotazioni", PrenotazioneSummary.da(pagina.contenuto()));
+        risposta.put("nextCursor", pagina.nextCursor());
+        return conCampi(risposta, fields);
     }
 
     // Singola prenotazione per ID (semplice) - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
     @GetMapping("/{id}")
-    public ResponseEntity<?> getPrenotazioneById(@PathVariable Long id, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
-        }
-
+    public ResponseEntity<?> getPrenotazioneById(@PathVariable Long id) {
         Prenotazione prenotazione = prenotazioneService.getPrenotazioneById(id);
         if (prenotazione == null) {
             return new ResponseEntity<>(
@@ -280,12 +356,7 @@ public class PrenotazioneController {
 
     // Dettagli completi di una prenotazione specifica - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
     @GetMapping("/{id}/details")
-    public ResponseEntity<?> getPrenotazioneDetailsById(@PathVariable Long id, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
-        }
-
+    public ResponseEntity<?> getPrenotazioneDetailsById(@PathVariable Long id) {
         // Prima verifica se la prenotazione esiste
         Prenotazione prenotazione = prenotazioneService.getPrenotazioneById(id);
         if (prenotazione == null) {
@@ -296,7 +367,7 @@ public class PrenotazioneController {
         }
 
         // Ottieni i dettagli completi
-        List<Map<String, Object>> dettagliCompleti = prenotazioneService.getPrenotazioneCompleteDetails(id);
+        List<PrenotazioneDettaglio> dettagliCompleti = prenotazioneService.getPrenotazioneCompleteDetails(id);
         
         return new ResponseEntity<>(
             Map.of(
@@ -310,67 +381,121 @@ public class PrenotazioneController {
 
     // Vista completa di tutte le prenotazioni con dettagli - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
     @GetMapping("/all-details")
-    public ResponseEntity<?> getAllPrenotazioniWithDetails(@RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getAllPrenotazioniWithDetails(@RequestParam(required = false) String cursor,
+                                                           @RequestParam(required = false) Integer size,
+                                                           ServletWebRequest request) {
+        Pagina.Cursore cursore;
+        int dimensione;
+        try {
+            cursore = Pagina.Cursore.decodifica(cursor);
+            dimensione = Pagina.dimensione(size);
+        } catch (IllegalArgumentException e) {
+            return paginazioneNonValida(e);
         }
-
-        List<Map<String, Object>> dettagliCompleti = prenotazioneService.getAllCompleteDetails();
+        if (versioniDati.nonModificato(request, versioniDati.etagDettagli(true))) {
+            return null;
+        }
+        Pagina<PrenotazioneDettaglio> pagina = prenotazioneService.getAllCompleteDetails(cursore, dimensione);
         
-        return new ResponseEntity<>(
-            Map.of(
-                "prenotazioni", dettagliCompleti,
-                "totalPrenotazioni", dettagliCompleti.size()
-            ),
-            HttpStatus.OK
-        );
+        Map<String, Object> risposta = new HashMap<>();
+        risposta.put("prenotazioni", pagina.contenuto());
+        risposta.put("prenotazioniInPagina", pagina.contenuto().size()); // Righe di questa pagina, non il totale
+        risposta.put("nextCursor", pagina.nextCursor());
+        return new ResponseEntity<>(risposta, HttpStatus.OK);
     }
 
-    // Prenotazioni per stato - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
-    @GetMapping("/stato/{stato}")
-    public ResponseEntity<?> getPrenotazioniByStato(@PathVariable String stato, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    // Esportazione NDJSON in streaming di tutte le prenotazioni con dettagli - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
+    @GetMapping("/export.ndjson")
+    public ResponseEntity<StreamingResponseBody> esportaPrenotazioni(@RequestParam(required = false) String from,
+                                                                     @RequestParam(required = false) String to,
+                                                                     @RequestParam(required = false) Long aulaId,
+                                                                     @RequestParam(required = false) String stato) throws IOException {
+        LocalDateTime inizio;
+        LocalDateTime fine;
+        Prenotazione.StatoPrenotazione statoEnum;
+        try {
+            inizio = FinestraTemporale.parseData(from, false);
+            fine = FinestraTemporale.parseData(to, true);
+            statoEnum = stato != null ? Prenotazione.StatoPrenotazione.valueOf(stato.toUpperCase()) : null;
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return comeStreaming(new ResponseEntity<>(
+                Collections.singletonMap("error", "Parametri non validi. Date: YYYY-MM-DD o YYYY-MM-DDTHH:MM:SS, stati: PRENOTATA, BLOCCATA, MANUTENZIONE, ANNULLATA"),
+                HttpStatus.BAD_REQUEST
+            ));
         }
 
+        StreamingResponseBody body = out -> prenotazioneService.esportaNdjson(inizio, fine, aulaId, statoEnum, out);
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/x-ndjson"))
+            .body(body);
+    }
+
+    // Le risposte in streaming non passano dai message converter: l'errore viene serializzato qui
+    private ResponseEntity<StreamingResponseBody> comeStreaming(ResponseEntity<?> errore) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(errore.getBody());
+        return ResponseEntity.status(errore.getStatusCode())
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(out -> out.write(json));
+    }
+
+    // Prenotazioni per stato - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
+    @GetMapping("/stato/{stato:[a-zA-Z]+}")
+    public ResponseEntity<?> getPrenotazioniByStato(@PathVariable String stato,
+                                                    @RequestParam(required = false) String fields,
+                                                    ServletWebRequest request) {
+        Prenotazione.StatoPrenotazione statoEnum;
         try {
-            Prenotazione.StatoPrenotazione statoEnum = Prenotazione.StatoPrenotazione.valueOf(stato.toUpperCase());
-            List<Prenotazione> prenotazioni = prenotazioneService.getPrenotazioniByStato(statoEnum);
-            
-            return new ResponseEntity<>(
-                Map.of(
-                    "stato", stato,
-                    "prenotazioni", prenotazioni,
-                    "totalPrenotazioni", prenotazioni.size()
-                ),
-                HttpStatus.OK
-            );
+            statoEnum = Prenotazione.StatoPrenotazione.valueOf(stato.toUpperCase());
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(
                 Collections.singletonMap("error", "Stato non valido. Stati disponibili: PRENOTATA, BLOCCATA, MANUTENZIONE, ANNULLATA"),
                 HttpStatus.BAD_REQUEST
             );
         }
+        if (versioniDati.nonModificato(request, versioniDati.etagPrenotazioni(false))) {
+            return null;
+        }
+        List<Prenotazione> prenotazioni = prenotazioneService.getPrenotazioniByStato(statoEnum);
+        
+        return conCampi(
+            Map.of(
+                "stato", stato,
+                "prenotazioni", PrenotazioneSummary.da(prenotazioni),
+                "totalPrenotazioni", prenotazioni.size()
+            ),
+            fields
+        );
     }
 
     // Prenotazioni future - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
     @GetMapping("/future")
-    public ResponseEntity<?> getPrenotazioniFuture(@RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getPrenotazioniFuture(@RequestParam(required = false) String fields,
+                                                   ServletWebRequest request) {
+        if (versioniDati.nonModificato(request, versioniDati.etagPrenotazioni(true))) {
+            return null;
         }
-
         List<Prenotazione> prenotazioni = prenotazioneService.getPrenotazioniFuture();
         
-        return new ResponseEntity<>(
+        return conCampi(
             Map.of(
-                "prenotazioni", prenotazioni,
+                "prenotazioni", PrenotazioneSummary.da(prenotazioni),
                 "totalPrenotazioni", prenotazioni.size()
             ),
-            HttpStatus.OK
+            fields
         );
     }
+    
+    // Risposta con le prenotazioni in formato sintetico limitate ai campi richiesti con ?fields=
+    private ResponseEntity<?> conCampi(Object corpo, String fields) {
+        MappingJacksonValue valore = new MappingJacksonValue(corpo);
+        try {
+            valore.setFilters(PrenotazioneSummary.filtro(fields));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                Collections.singletonMap("error", e.getMessage()),
+                HttpStatus.BAD_REQUEST
+            );
+        }
+        return new ResponseEntity<>(valore, HttpStatus.OK);
+    }
 }
@@ -1,19 +1,32 @@
 package com.prenotazioni.controller;
 
-import com.prenotazioni.service.JwtService;
 import com.prenotazioni.service.AulaService;
+import com.prenotazioni.service.OccupazioneGiornalieraService;
 import com.prenotazioni.service.PrenotazioneService;
+import com.prenotazioni.service.StatoAuleService;
+import com.prenotazioni.service.StatoAuleStream;
+import com.prenotazioni.service.VersioniDati;
 import com.prenotazioni.model.Aula;
+import com.prenotazioni.dto.FinestraTemporale;
+import com.prenotazioni.dto.Pagina;
+import com.prenotazioni.dto.PrenotazioneDettaglio;
 import com.prenotazioni.dto.RoomDetailsResponse;
 
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/api/rooms")
@@ -23,39 +36,35 @@ public class RoomController {
     private AulaService aulaService;
     
     @Autowired
-    private JwtService jwtService;
+    private PrenotazioneService prenotazioneService;
     
     @Autowired
-    private PrenotazioneService prenotazioneService;
-
-    // Metodo privato per verificare autenticazione (senza controllo ruolo)
-    private ResponseEntity<?> checkAuth(String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            return new ResponseEntity<>(
-                Collections.singletonMap("error", "Token di autorizzazione mancante"),
-                HttpStatus.UNAUTHORIZED
-            );
-        }
-
-        String token = authHeader.substring(7);
-        if (!jwtService.validateToken(token)) {
-            return new ResponseEntity<>(
-                Collections.singletonMap("error", "Token non valido"),
-                HttpStatus.UNAUTHORIZED
-            );
-        }
+    private OccupazioneGiornalieraService occupazioneGiornalieraService;
+    
+    @Autowired
+    private StatoAuleService statoAuleService;
+    
+    @Autowired
+    private StatoAuleStream statoAuleStream;
+    
+    // ETag delle letture: con If-None-Match uguale si risponde 304 prima di leggere i dati
+    @Autowired
+    private VersioniDati versioniDati;
 
-        return null; // Access granted per tutti gli utenti autenticati
+    // Risposta per parametri from/to/limit/cursor non validi
+    private ResponseEntity<?> finestraNonValida(RuntimeException e) {
+        return new ResponseEntity<>(
+            Collections.singletonMap("error", "Parametri from/to/limit/cursor non validi: " + e.getMessage()),
+            HttpStatus.BAD_REQUEST
+        );
     }
 
     // Lista tutte le aule - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
     @GetMapping
-    public ResponseEntity<?> getAllRooms(@RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getAllRooms(ServletWebRequest request) {
+        if (versioniDati.nonModificato(request, versioniDati.etagCatalogo())) {
+            return null;
         }
-
         List<Aula> aule = aulaService.getAllAule();
         if (aule == null || aule.isEmpty()) {
             return new ResponseEntity<>(
@@ -72,31 +81,100 @@ public class RoomController {
 
     // Vista completa di tutte le prenotazioni - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
     @GetMapping("/details")
-    public ResponseEntity<?> getAllRoomsWithDetails(@RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getAllRoomsWithDetails(@RequestParam(required = false) String cursor,
+                                                    @RequestParam(required = false) Integer size,
+                                                    ServletWebRequest request) {
+        Pagina.Cursore cursore;
+        int dimensione;
+        try {
+            cursore = Pagina.Cursore.decodifica(cursor);
+            dimensione = Pagina.dimensione(size);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                Collections.singletonMap("error", "Parametri di paginazione non validi: " + e.getMessage()),
+                HttpStatus.BAD_REQUEST
+            );
+        }
+        if (versioniDati.nonModificato(request, versioniDati.etagDettagli(true))) {
+            return null;
         }
-
-        List<Map<String, Object>> dettagliCompleti = prenotazioneService.getAllCompleteDetails();
         
+        Pagina<PrenotazioneDettaglio> pagina = prenotazioneService.getAllCompleteDetails(cursore, dimensione);
+        
+        Map<String, Object> risposta = new HashMap<>();
+        risposta.put("prenotazioni", pagina.contenuto());
+        risposta.put("prenotazioniInPagina", pagina.contenuto().size()); // Righe di questa pagina, non il totale
+        risposta.put("nextCursor", pagina.nextCursor());
+        return new ResponseEntity<>(risposta, HttpStatus.OK);
+    }
+
+    // Aule libere in un periodo con filtri opzionali - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
+    @GetMapping("/free")
+    public ResponseEntity<?> getFreeRooms(@RequestParam String inizio,
+                                          @RequestParam String fine,
+                                          @RequestParam(defaultValue = "0") int minCapienza,
+                                          @RequestParam(required = false) Integer piano,
+                                          @RequestParam(required = false) Boolean virtual) {
+        try {
+            LocalDateTime inizioDateTime = LocalDateTime.parse(inizio);
+            LocalDateTime fineDateTime = LocalDateTime.parse(fine);
+            if (!fineDateTime.isAfter(inizioDateTime)) {
+                return new ResponseEntity<>(
+                    Collections.singletonMap("error", "La fine deve essere successiva all'inizio"),
+                    HttpStatus.BAD_REQUEST
+                );
+            }
+
+            List<Aula> aule = prenotazioneService.getAuleLibere(inizioDateTime, fineDateTime, minCapienza, piano, virtual);
+            return new ResponseEntity<>(
+                Map.of(
+                    "rooms", aule,
+                    "totalRooms", aule.size(),
+                    "periodo", inizio + " - " + fine
+                ),
+                HttpStatus.OK
+            );
+        } catch (DateTimeParseException e) {
+            return new ResponseEntity<>(
+                Collections.singletonMap("error", "Formato data non valido. Usa: YYYY-MM-DDTHH:MM:SS"),
+                HttpStatus.BAD_REQUEST
+            );
+        }
+    }
+
+    // Stato attuale di tutte le aule in una sola chiamata, letto dall'istantanea in memoria
+    @GetMapping("/status")
+    public ResponseEntity<?> getRoomsStatus() {
+        StatoAuleService.Istantanea istantanea = statoAuleService.getIstantanea();
         return new ResponseEntity<>(
             Map.of(
-                "prenotazioni", dettagliCompleti,
-                "totalPrenotazioni", dettagliCompleti.size()
+                "rooms", istantanea.aule().values(),
+                "totalRooms", istantanea.aule().size(),
+                "timestamp", istantanea.aggiornataIl()
             ),
             HttpStatus.OK
         );
     }
 
+    // Variazioni dello stato delle aule in Server-Sent Events: evento "snapshot" iniziale, poi un evento "stato"
+    // per ogni aula che cambia. Filtri opzionali: piano e uno o più aulaId.
+    // Con troppi client collegati risponde 503 senza corpo (EventSource riprova dopo Retry-After)
+    @GetMapping(value = "/status/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamRoomsStatus(@RequestParam(required = false) Integer piano,
+                                                        @RequestParam(required = false) List<Long> aulaId) {
+        SseEmitter emitter = statoAuleStream.iscrivi(piano, aulaId);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "30").build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
     // Ottieni singola aula per ID - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI  
     @GetMapping("/{id}")
-    public ResponseEntity<?> getRoomById(@PathVariable Long id, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getRoomById(@PathVariable Long id, ServletWebRequest request) {
+        if (versioniDati.nonModificato(request, versioniDati.etagCatalogo())) {
+            return null;
         }
-
         java.util.Optional<Aula> aula = aulaService.getAulaById(id);
         if (aula.isEmpty()) {
             return new ResponseEntity<>(
@@ -113,10 +191,22 @@ public class RoomController {
 
     // Ottieni dettagli completi aula con prenotazioni - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
     @GetMapping("/{id}/details")
-    public ResponseEntity<?> getRoomDetailsById(@PathVariable Long id, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getRoomDetailsById(@PathVariable Long id,
+                                                @RequestParam(required = false) String from,
+                                                @RequestParam(required = false) String to,
+                                                @RequestParam(required = false) Integer limit,
+                                                @RequestParam(required = false) String cursor,
+                                                ServletWebRequest request) {
+        FinestraTemporale finestra;
+        Pagina.Cursore cursore;
+        try {
+            finestra = FinestraTemporale.daParametri(from, to, limit);
+            cursore = Pagina.Cursore.decodifica(cursor);
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return finestraNonValida(e);
+        }
+        if (versioniDati.nonModificato(request, versioniDati.conCatalogo(versioniDati.etagDettagli(true)))) {
+            return null;
         }
 
         // Prima verifica se l'aula esiste
@@ -128,27 +218,23 @@ public class RoomController {
             );
         }
 
-        // Ottieni i dettagli completi
-        List<Map<String, Object>> dettagliCompleti = prenotazioneService.getRoomCompleteDetails(id);
+        // Ottieni i dettagli completi (una pagina di al massimo limit righe)
+        Pagina<PrenotazioneDettaglio> pagina = prenotazioneService.getRoomCompleteDetails(id, finestra, cursore);
         
-        return new ResponseEntity<>(
-            Map.of(
-                "aula", aula.get(),
-                "prenotazioni", dettagliCompleti,
-                "totalPrenotazioni", dettagliCompleti.size()
-            ),
-            HttpStatus.OK
-        );
+        Map<String, Object> risposta = new HashMap<>();
+        risposta.put("aula", aula.get());
+        risposta.put("prenotazioni", pagina.contenuto());
+        risposta.put("prenotazioniInPagina", pagina.contenuto().size()); // Righe di questa pagina, non il totale
+        risposta.put("nextCursor", pagina.nextCursor());
+        return new ResponseEntity<>(risposta, HttpStatus.OK);
     }
 
     // Filtra aule per piano - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
     @GetMapping("/piano/{piano}")
-    public ResponseEntity<?> getRoomsByFloor(@PathVariable int piano, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getRoomsByFloor(@PathVariable int piano, ServletWebRequest request) {
+        if (versioniDati.nonModificato(request, versioniDati.etagCatalogo())) {
+            return null;
         }
-
         List<Aula> aule = aulaService.getAuleByPiano(piano);
         if (aule == null || aule.isEmpty()) {
             return new ResponseEntity<>(
@@ -165,12 +251,10 @@ public class RoomController {
 
     // Filtra aule per capienza minima - ACCESSIBILE A TUTTI GLI UTENTI AUTENTICATI
     @GetMapping("/capienza")
-    public ResponseEntity<?> getRoomsByCapacity(@RequestParam int minCapienza, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getRoomsByCapacity(@RequestParam int minCapienza, ServletWebRequest request) {
+        if (versioniDati.nonModificato(request, versioniDati.etagCatalogo())) {
+            return null;
         }
-
         List<Aula> aule = aulaService.getAuleByCapienzaMinima(minCapienza);
         if (aule == null || aule.isEmpty()) {
             return new ResponseEntity<>(
@@ -187,13 +271,21 @@ public class RoomController {
 
     // Endpoint per ottenere tutte le aule con dettagli completi (formato mock-like)
     @GetMapping("/detailed")
-    public ResponseEntity<?> getAllRoomsDetailed(@RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getAllRoomsDetailed(@RequestParam(required = false) String from,
+                                                 @RequestParam(required = false) String to,
+                                                 @RequestParam(required = false) Integer limit,
+                                                 ServletWebRequest request) {
+        FinestraTemporale finestra;
+        try {
+            finestra = FinestraTemporale.daParametri(from, to, limit);
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return finestraNonValida(e);
+        }
+        if (versioniDati.nonModificato(request, versioniDati.conCatalogo(versioniDati.etagPrenotazioni(true)))) {
+            return null;
         }
 
-        List<RoomDetailsResponse> roomDetails = aulaService.getAllRoomsWithDetails();
+        List<RoomDetailsResponse> roomDetails = aulaService.getAllRoomsWithDetails(finestra);
         
         return new ResponseEntity<>(
             Collections.singletonMap("rooms", roomDetails),
@@ -203,13 +295,22 @@ public class RoomController {
 
     // Endpoint per ottenere una singola aula con dettagli completi
     @GetMapping("/{id}/detailed")
-    public ResponseEntity<?> getRoomDetailed(@PathVariable Long id, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getRoomDetailed(@PathVariable Long id,
+                                             @RequestParam(required = false) String from,
+                                             @RequestParam(required = false) String to,
+                                             @RequestParam(required = false) Integer limit,
+                                             ServletWebRequest request) {
+        FinestraTemporale finestra;
+        try {
+            finestra = FinestraTemporale.daParametri(from, to, limit);
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return finestraNonValida(e);
+        }
+        if (versioniDati.nonModificato(request, versioniDati.conCatalogo(versioniDati.etagPrenotazioni(true)))) {
+            return null;
         }
 
-        RoomDetailsResponse roomDetails = aulaService.getRoomWithDetails(id);
+        RoomDetailsResponse roomDetails = aulaService.getRoomWithDetails(id, finestra);
         if (roomDetails == null) {
             return new ResponseEntity<>(
                 Collections.singletonMap("error", "Aula non trovata"),
@@ -225,12 +326,10 @@ public class RoomController {
 
     // Endpoint per ottenere solo le aule fisiche
     @GetMapping("/physical")
-    public ResponseEntity<?> getPhysicalRooms(@RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getPhysicalRooms(ServletWebRequest request) {
+        if (versioniDati.nonModificato(request, versioniDati.etagCatalogo())) {
+            return null;
         }
-
         List<Aula> aule = aulaService.getPhysicalRoomsOrdered();
         return new ResponseEntity<>(
             Map.of(
@@ -244,12 +343,10 @@ public class RoomController {
 
     // Endpoint per ottenere solo le aule virtuali
     @GetMapping("/virtual")
-    public ResponseEntity<?> getVirtualRooms(@RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getVirtualRooms(ServletWebRequest request) {
+        if (versioniDati.nonModificato(request, versioniDati.etagCatalogo())) {
+            return null;
         }
-
         List<Aula> aule = aulaService.getVirtualRoomsOrdered();
         return new ResponseEntity<>(
             Map.of(
@@ -263,13 +360,21 @@ public class RoomController {
 
     // Endpoint per ottenere aule fisiche con dettagli completi
     @GetMapping("/physical/detailed")
-    public ResponseEntity<?> getPhysicalRoomsDetailed(@RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getPhysicalRoomsDetailed(@RequestParam(required = false) String from,
+                                                      @RequestParam(required = false) String to,
+                                                      @RequestParam(required = false) Integer limit,
+                                                      ServletWebRequest request) {
+        FinestraTemporale finestra;
+        try {
+            finestra = FinestraTemporale.daParametri(from, to, limit);
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return finestraNonValida(e);
+        }
+        if (versioniDati.nonModificato(request, versioniDati.conCatalogo(versioniDati.etagPrenotazioni(true)))) {
+            return null;
         }
 
-        List<RoomDetailsResponse> roomDetails = aulaService.getPhysicalRoomsWithDetails();
+        List<RoomDetailsResponse> roomDetails = aulaService.getPhysicalRoomsWithDetails(finestra);
         return new ResponseEntity<>(
             Map.of(
                 "rooms", roomDetails,
@@ -282,13 +387,21 @@ public class RoomController {
 
     // Endpoint per ottenere aule virtuali con dettagli completi
     @GetMapping("/virtual/detailed")
-    public ResponseEntity<?> getVirtualRoomsDetailed(@RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getVirtualRoomsDetailed(@RequestParam(required = false) String from,
+                                                     @RequestParam(required = false) String to,
+                                                     @RequestParam(required = false) Integer limit,
+                                                     ServletWebRequest request) {
+        FinestraTemporale finestra;
+        try {
+            finestra = FinestraTemporale.daParametri(from, to, limit);
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return finestraNonValida(e);
+        }
+        if (versioniDati.nonModificato(request, versioniDati.conCatalogo(versioniDati.etagPrenotazioni(true)))) {
+            return null;
         }
 
-        List<RoomDetailsResponse> roomDetails = aulaService.getVirtualRoomsWithDetails();
+        List<RoomDetailsResponse> roomDetails = aulaService.getVirtualRoomsWithDetails(finestra);
         return new ResponseEntity<>(
             Map.of(
                 "rooms", roomDetails,
@@ -301,12 +414,10 @@ public class RoomController {
 
     // Endpoint per ottenere statistiche aule fisiche vs virtuali
     @GetMapping("/stats")
-    public ResponseEntity<?> getRoomsStats(@RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> authCheck = checkAuth(authHeader);
-        if (authCheck != null) {
-            return authCheck;
+    public ResponseEntity<?> getRoomsStats(ServletWebRequest request) {
+        if (versioniDati.nonModificato(request, versioniDati.etagCatalogo())) {
+            return null;
         }
-
         long physicalCount = aulaService.countPhysicalRooms();
         long virtualCount = aulaService.countVirtualRooms();
         long totalCount = physicalCount + virtualCount;
@@ -322,4 +433,24 @@ public class RoomController {
             HttpStatus.OK
         );
     }
+
+    // Minuti prenotati e numero di prenotazioni per aula/giorno/stato, letti dal riepilogo precalcolato.
+    // Periodo from/to come per i dettagli (default: prossimi 14 giorni), aulaId opzionale. Il riepilogo è per giorno:
+    // sono inclusi per intero i giorni che toccano il periodo, anche l'ultimo se "to" ha un orario
+    @GetMapping("/stats/occupancy")
+    public ResponseEntity<?> getRoomsOccupancyStats(@RequestParam(required = false) String from,
+                                                    @RequestParam(required = false) String to,
+                                                    @RequestParam(required = false) Long aulaId) {
+        FinestraTemporale finestra;
+        try {
+            finestra = FinestraTemporale.daParametri(from, to, null);
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return finestraNonValida(e);
+        }
+
+        return new ResponseEntity<>(
+            occupazioneGiornalieraService.getRiepilogo(finestra.from(), finestra.to(), aulaId),
+            HttpStatus.OK
+        );
+    }
 }
@@ -1,21 +1,36 @@
 package com.prenotazioni.controller.admin;
 
 import com.prenotazioni.service.AuthService;
+import com.prenotazioni.service.JwtPrincipal;
 import com.prenotazioni.service.JwtService;
 import com.prenotazioni.service.AulaService;
+import com.prenotazioni.service.ImportazioneService;
+import com.prenotazioni.service.OccupazioneGiornalieraService;
+import com.prenotazioni.service.OccupazioneService;
 import com.prenotazioni.service.PrenotazioneService;
+import com.prenotazioni.service.StatisticheCacheService;
+import com.prenotazioni.service.StatoAuleStream;
 import com.prenotazioni.dto.RegisterRequest;
 import com.prenotazioni.dto.AulaRequest;
+import com.prenotazioni.dto.EsitoImportazione;
+import com.prenotazioni.dto.FinestraTemporale;
+import com.prenotazioni.dto.RapportoConflitti;
+import com.prenotazioni.dto.ReportOccupazione;
 import com.prenotazioni.model.Utente;
 import com.prenotazioni.model.Aula;
 
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -25,47 +40,24 @@ public class AdminController {
     @Autowired
     private AuthService authService;
     @Autowired
-    private JwtService jwtService;
-    @Autowired
     private AulaService aulaService;
     @Autowired
     private PrenotazioneService prenotazioneService;
-
-    // Metodo privato per verificare se l'utente è admin
-    private ResponseEntity<?> checkAdminAccess(String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            return new ResponseEntity<>(
-                Collections.singletonMap("error", "Token di autorizzazione mancante"),
-                HttpStatus.UNAUTHORIZED
-            );
-        }
-
-        String token = authHeader.substring(7);
-        if (!jwtService.validateToken(token)) {
-            return new ResponseEntity<>(
-                Collections.singletonMap("error", "Token non valido"),
-                HttpStatus.UNAUTHORIZED
-            );
-        }
-
-        String ruolo = jwtService.getRuoloFromToken(token);
-        if (!"admin".equals(ruolo)) {
-            return new ResponseEntity<>(
-                Collections.singletonMap("error", "Accesso negato: solo gli amministratori possono accedere"),
-                HttpStatus.FORBIDDEN
-            );
-        }
-
-        return null; // Access granted
-    }
+    @Autowired
+    private JwtService jwtService;
+    @Autowired
+    private ImportazioneService importazioneService;
+    @Autowired
+    private OccupazioneService occupazioneService;
+    @Autowired
+    private OccupazioneGiornalieraService occupazioneGiornalieraService;
+    @Autowired
+    private StatoAuleStream statoAuleStream;
+    @Autowired
+    private StatisticheCacheService statisticheCacheService;
 
     @PostMapping("/register")
-    public ResponseEntity<?> register(@RequestBody RegisterRequest request, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> accessCheck = checkAdminAccess(authHeader);
-        if (accessCheck != null) {
-            return accessCheck;
-        }
-
+    public ResponseEntity<?> register(@RequestBody RegisterRequest request) {
         Utente utente = authService.register(request);
         if (utente == null) {
             return new ResponseEntity<>(
@@ -81,12 +73,7 @@ public class AdminController {
 
     // Lista tutti gli utenti
     @GetMapping("/users")
-    public ResponseEntity<?> getAllUsers(@RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> accessCheck = checkAdminAccess(authHeader);
-        if (accessCheck != null) {
-            return accessCheck;
-        }
-
+    public ResponseEntity<?> getAllUsers() {
         List<Utente> users = authService.getAllUsers();
         if (users == null || users.isEmpty()) {
             return new ResponseEntity<>(
@@ -103,12 +90,7 @@ public class AdminController {
 
     // Modifica utente
     @PutMapping("/users/{id}")
-    public ResponseEntity<?> updateUtente(@PathVariable Long id, @RequestBody RegisterRequest request, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> accessCheck = checkAdminAccess(authHeader);
-        if (accessCheck != null) {
-            return accessCheck;
-        }
-
+    public ResponseEntity<?> updateUtente(@PathVariable Long id, @RequestBody RegisterRequest request) {
         Utente updated = authService.updateUtente(id, request);
         if (updated == null) {
             return new ResponseEntity<>(
@@ -125,12 +107,7 @@ public class AdminController {
 
     // Eliminazione utente
     @DeleteMapping("/delete/{id}")
-    public ResponseEntity<?> deleteUtente(@PathVariable Long id, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> accessCheck = checkAdminAccess(authHeader);
-        if (accessCheck != null) {
-            return accessCheck;
-        }
-
+    public ResponseEntity<?> deleteUtente(@PathVariable Long id) {
         boolean deleted = authService.deleteUtente(id);
         if (!deleted) {
             return new ResponseEntity<>(
@@ -147,12 +124,7 @@ public class AdminController {
 
     // Lista tutte le aule
     @GetMapping("/rooms")
-    public ResponseEntity<?> getAllRooms(@RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> accessCheck = checkAdminAccess(authHeader);
-        if (accessCheck != null) {
-            return accessCheck;
-        }
-
+    public ResponseEntity<?> getAllRooms() {
         List<Aula> aule = aulaService.getAllAule();
         if (aule == null || aule.isEmpty()) {
             return new ResponseEntity<>(
@@ -169,12 +141,7 @@ public class AdminController {
 
     // Ottieni singola aula per ID
     @GetMapping("/rooms/{id}")
-    public ResponseEntity<?> getRoomById(@PathVariable Long id, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> accessCheck = checkAdminAccess(authHeader);
-        if (accessCheck != null) {
-            return accessCheck;
-        }
-
+    public ResponseEntity<?> getRoomById(@PathVariable Long id) {
         java.util.Optional<Aula> aula = aulaService.getAulaById(id);
         if (aula.isEmpty()) {
             return new ResponseEntity<>(
@@ -191,12 +158,7 @@ public class AdminController {
 
     // Gestione stanze - Creazione stanza
     @PostMapping("/createrooms")
-    public ResponseEntity<?> createRoom(@RequestBody AulaRequest roomRequest, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> accessCheck = checkAdminAccess(authHeader);
-        if (accessCheck != null) {
-            return accessCheck;
-        }
-
+    public ResponseEntity<?> createRoom(@RequestBody AulaRequest roomRequest) {
         Aula nuovaAula = aulaService.createAula(roomRequest);
         if (nuovaAula == null) {
             return new ResponseEntity<>(
@@ -213,12 +175,7 @@ public class AdminController {
 
     // Modifica stanza
     @PutMapping("/rooms/{id}")
-    public ResponseEntity<?> updateRoom(@PathVariable Long id, @RequestBody AulaRequest roomRequest, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> accessCheck = checkAdminAccess(authHeader);
-        if (accessCheck != null) {
-            return accessCheck;
-        }
-
+    public ResponseEntity<?> updateRoom(@PathVariable Long id, @RequestBody AulaRequest roomRequest) {
         Aula aulaAggiornata = aulaService.updateAula(id, roomRequest);
         if (aulaAggiornata == null) {
             return new ResponseEntity<>(
@@ -235,12 +192,7 @@ public class AdminController {
 
     // Eliminazione stanza
     @DeleteMapping("/rooms/{id}")
-    public ResponseEntity<?> deleteRoom(@PathVariable Long id, @RequestHeader("Authorization") String authHeader) {
-        ResponseEntity<?> accessCheck = checkAdminAccess(authHeader);
-        if (accessCheck != null) {
-            return accessCheck;
-        }
-
+    public ResponseEntity<?> deleteRoom(@PathVariable Long id) {
         boolean eliminata = aulaService.deleteAula(id);
         if (!eliminata) {
             return new ResponseEntity<>(
@@ -260,17 +212,10 @@ public class AdminController {
     // Elimina prenotazione come admin (può eliminare qualsiasi prenotazione)
     @DeleteMapping("/prenotazioni/{id}")
     public ResponseEntity<?> deletePrenotazioneAsAdmin(@PathVariable Long id, 
-                                                      @RequestHeader("Authorization") String authHeader,
+                                                      @AuthenticationPrincipal JwtPrincipal principal,
                                                       @RequestBody(required = false) Map<String, String> requestBody) {
-        ResponseEntity<?> accessCheck = checkAdminAccess(authHeader);
-        if (accessCheck != null) {
-            return accessCheck;
-        }
-
         try {
-            // Estrai il token per ottenere l'ID dell'admin
-            String token = authHeader.substring(7);
-            Long adminId = jwtService.getUserIdFromToken(token);
+            Long adminId = principal.id();
             
             // Motivo opzionale per l'eliminazione
             String motivo = (requestBody != null && requestBody.get("reason") != null) 
@@ -303,4 +248,110 @@ public class AdminController {
             );
         }
     }
+
+    // Verifica delle sovrapposizioni tra prenotazioni attive della stessa aula, con filtri opzionali
+    // su periodo (from/to: YYYY-MM-DD o YYYY-MM-DDTHH:MM:SS) e aule (?aulaId=1&aulaId=2)
+    @GetMapping("/conflicts")
+    public ResponseEntity<?> getConflitti(@RequestParam(required = false) String from,
+                                          @RequestParam(required = false) String to,
+                                          @RequestParam(required = false) List<Long> aulaId,
+                                          @RequestParam(required = false) Integer limit) {
+        LocalDateTime inizio;
+        LocalDateTime fine;
+        try {
+            inizio = FinestraTemporale.parseData(from, false);
+            fine = FinestraTemporale.parseData(to, true);
+        } catch (DateTimeParseException e) {
+            return new ResponseEntity<>(
+                Collections.singletonMap("error", "Formato data non valido. Usa: YYYY-MM-DD o YYYY-MM-DDTHH:MM:SS"),
+                HttpStatus.BAD_REQUEST
+            );
+        }
+        int limite = limit != null ? limit : RapportoConflitti.LIMITE_DEFAULT;
+        if (limite <= 0) {
+            return new ResponseEntity<>(
+                Collections.singletonMap("error", "'limit' deve essere positivo"),
+                HttpStatus.BAD_REQUEST
+            );
+        }
+
+        RapportoConflitti rapporto = prenotazioneService.trovaConflitti(
+            inizio, fine, aulaId, Math.min(limite, RapportoConflitti.LIMITE_MASSIMO));
+        return new ResponseEntity<>(rapporto, HttpStatus.OK);
+    }
+
+    // Occupazione delle aule per aula, piano e fascia oraria nel periodo from/to (default: prossimi 14 giorni),
+    // calcolata sull'orario di apertura [oraApertura, oraChiusura) dei giorni feriali (weekend=true per includerlo)
+    @GetMapping("/analytics/occupancy")
+    public ResponseEntity<?> getOccupazione(@RequestParam(required = false) String from,
+                                            @RequestParam(required = false) String to,
+                                            @RequestParam(defaultValue = "8") int oraApertura,
+                                            @RequestParam(defaultValue = "20") int oraChiusura,
+                                            @RequestParam(defaultValue = "false") boolean weekend,
+                                            @RequestParam(required = false) Boolean isVirtual,
+                                            @RequestParam(required = false) List<Long> aulaId) {
+        FinestraTemporale finestra;
+        try {
+            finestra = FinestraTemporale.daParametri(from, to, null);
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                Collections.singletonMap("error", "Periodo non valido: usa from/to nel formato YYYY-MM-DD o YYYY-MM-DDTHH:MM:SS"),
+                HttpStatus.BAD_REQUEST
+            );
+        }
+        if (oraApertura < 0 || oraChiusura > 24 || oraApertura >= oraChiusura) {
+            return new ResponseEntity<>(
+                Collections.singletonMap("error", "Orario di apertura non valido: 0 <= oraApertura < oraChiusura <= 24"),
+                HttpStatus.BAD_REQUEST
+            );
+        }
+
+        ReportOccupazione report = occupazioneService.calcolaOccupazione(
+            finestra.from(), finestra.to(), oraApertura, oraChiusura, weekend, isVirtual, aulaId);
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
+
+    // Ricostruisce da zero il riepilogo giornaliero dell'occupazione (backfill o riallineamento)
+    @PostMapping("/rollup/rebuild")
+    public ResponseEntity<?> ricostruisciRiepilogo() {
+        long prenotazioni = occupazioneGiornalieraService.ricostruisci();
+        return new ResponseEntity<>(
+            Map.of("message", "Riepilogo occupazione ricostruito", "prenotazioni", prenotazioni),
+            HttpStatus.OK
+        );
+    }
+
+    // Importazione massiva dell'orario da CSV (corpo della richiesta, Content-Type: text/csv).
+    // Colonne: aula (id o nome), corso (id, nome o vuoto), inizio, fine, descrizione
+    @PostMapping("/import/prenotazioni")
+    public ResponseEntity<?> importaPrenotazioni(InputStream csv, @AuthenticationPrincipal JwtPrincipal principal) {
+        try {
+            EsitoImportazione esito = importazioneService.importaCsv(csv, principal.id());
+            if (esito == null) {
+                return new ResponseEntity<>(
+                    Collections.singletonMap("error", "Amministratore non trovato"),
+                    HttpStatus.BAD_REQUEST
+                );
+            }
+            return new ResponseEntity<>(esito, HttpStatus.OK);
+        } catch (Exception e) {
+            return new ResponseEntity<>(
+                Collections.singletonMap("error", "Errore durante l'importazione: " + e.getMessage()),
+                HttpStatus.INTERNAL_SERVER_ERROR
+            );
+        }
+    }
+
+    // ========== METRICHE ==========
+
+    // Contatori interni del backend (cache dei token verificati, lock delle prenotazioni)
+    @GetMapping("/metrics")
+    public ResponseEntity<?> getMetrics() {
+        Map<String, Object> metriche = new LinkedHashMap<>();
+        metriche.put("jwtCache", jwtService.getStatisticheCache());
+        metriche.put("bookingLock", prenotazioneService.getStatisticheLock());
+        metriche.put("statusStream", statoAuleStream.getStatistiche());
+        metriche.put("entityCache", statisticheCacheService.getStatistiche());
+        return new ResponseEntity<>(metriche, HttpStatus.OK);
+    }
 }
@@ -0,0 +1,43 @@
+package com.prenotazioni.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Resoconto di un'importazione CSV: contatori e, per ogni riga scartata, numero di riga e motivo.
+// L'elenco degli errori è limitato a ERRORI_MASSIMI voci; i contatori restano completi.
+public class EsitoImportazione {
+
+    public static final int ERRORI_MASSIMI = 1000;
+
+    public record ErroreRiga(long riga, String errore) {}
+
+    private long righeLette;
+    private long importate;
+    private long scartate;
+    private final List<ErroreRiga> errori = new ArrayList<>();
+    private boolean erroriTroncati;
+
+    public void rigaLetta() {
+        righeLette++;
+    }
+
+    public void importate(int quante) {
+        importate += quante;
+    }
+
+    public void scarta(long riga, String errore) {
+        scartate++;
+        if (errori.size() < ERRORI_MASSIMI) {
+            errori.add(new ErroreRiga(riga, errore));
+        } else {
+            erroriTroncati = true;
+        }
+    }
+
+    // Getter
+    public long getRigheLette() { return righeLette; }
+    public long getImportate() { return importate; }
+    public long getScartate() { return scartate; }
+    public List<ErroreRiga> getErrori() { return errori; }
+    public boolean isErroriTroncati() { return erroriTroncati; }
+}
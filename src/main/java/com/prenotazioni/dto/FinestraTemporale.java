@@ -0,0 +1,42 @@
+package com.prenotazioni.dto;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Finestra temporale [from, to) con un limite massimo di prenotazioni restituite
+public record FinestraTemporale(LocalDateTime from, LocalDateTime to, int limit) {
+
+    public static final int GIORNI_DEFAULT = 14;
+    public static final int LIMIT_DEFAULT = 100;
+    public static final int LIMIT_MASSIMO = 1000;
+
+    // Costruisce la finestra dai parametri della richiesta (tutti opzionali).
+    // Default: da oggi alle 00:00 fino alla fine del quattordicesimo giorno successivo.
+    // Le date accettano sia "YYYY-MM-DD" sia "YYYY-MM-DDTHH:MM:SS"; "to" con sola data è inclusivo.
+    public static FinestraTemporale daParametri(String from, String to, Integer limit) {
+        LocalDateTime inizio = from != null ? parseData(from, false) : LocalDate.now().atStartOfDay();
+        LocalDateTime fine = to != null ? parseData(to, true) : inizio.toLocalDate().plusDays(GIORNI_DEFAULT + 1).atStartOfDay();
+        if (!fine.isAfter(inizio)) {
+            throw new IllegalArgumentException("'to' deve essere successivo a 'from'");
+        }
+
+        int limite = limit != null ? limit : LIMIT_DEFAULT;
+        if (limite <= 0) {
+            throw new IllegalArgumentException("'limit' deve essere positivo");
+        }
+        return new FinestraTemporale(inizio, fine, Math.min(limite, LIMIT_MASSIMO));
+    }
+
+    // Interpreta una data "YYYY-MM-DD" (inizio giornata, o giorno successivo se fineGiornata)
+    // oppure "YYYY-MM-DDTHH:MM:SS"; null se il valore è assente
+    public static LocalDateTime parseData(String valore, boolean fineGiornata) {
+        if (valore == null) {
+            return null;
+        }
+        if (valore.length() == 10) {
+            LocalDate data = LocalDate.parse(valore);
+            return fineGiornata ? data.plusDays(1).atStartOfDay() : data.atStartOfDay();
+        }
+        return LocalDateTime.parse(valore);
+    }
+}
@@ -0,0 +1,26 @@
+package com.prenotazioni.dto;
+
+import com.prenotazioni.model.Prenotazione;
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+
+import java.time.LocalDateTime;
+
+// Vista minima di una prenotazione: solo id, aula, orari e stato (niente utente/corso)
+public record IntervalloPrenotazione(Long id, Long aulaId, LocalDateTime inizio, LocalDateTime fine,
+                                     StatoPrenotazione stato) {
+
+    public static IntervalloPrenotazione da(Prenotazione prenotazione) {
+        return new IntervalloPrenotazione(
+            prenotazione.getId(),
+            prenotazione.getAula().getId(),
+            prenotazione.getInizio(),
+            prenotazione.getFine(),
+            prenotazione.getStato()
+        );
+    }
+
+    // true se l'intervallo si sovrappone a [inizio, fine)
+    public boolean siSovrappone(LocalDateTime inizio, LocalDateTime fine) {
+        return this.inizio.isBefore(fine) && this.fine.isAfter(inizio);
+    }
+}
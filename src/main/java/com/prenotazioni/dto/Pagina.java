@@ -0,0 +1,63 @@
+package com.prenotazioni.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+// Pagina di risultati con paginazione keyset su (inizio, id) in ordine decrescente.
+// nextCursor è opaco per il client ed è null sull'ultima pagina.
+public record Pagina<T>(List<T> contenuto, String nextCursor) {
+
+    public static final int DIMENSIONE_DEFAULT = 100;
+    public static final int DIMENSIONE_MASSIMA = 1000;
+
+    // Normalizza la dimensione richiesta dal client
+    public static int dimensione(Integer size) {
+        if (size == null) {
+            return DIMENSIONE_DEFAULT;
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException("'size' deve essere positivo");
+        }
+        return Math.min(size, DIMENSIONE_MASSIMA);
+    }
+
+    // Costruisce la pagina da righe lette con limite dimensione + 1: la riga in più indica
+    // che esiste una pagina successiva, il cui cursore è l'ultima riga restituita
+    public static <T> Pagina<T> da(List<T> righe, int dimensione, Function<T, Cursore> cursoreDi) {
+        if (righe.size() <= dimensione) {
+            return new Pagina<>(righe, null);
+        }
+        List<T> contenuto = new ArrayList<>(righe.subList(0, dimensione));
+        return new Pagina<>(contenuto, cursoreDi.apply(contenuto.get(dimensione - 1)).codifica());
+    }
+
+    // Posizione dell'ultima riga restituita: la pagina successiva parte da (inizio, id) escluso
+    public record Cursore(LocalDateTime inizio, Long id) {
+
+        public String codifica() {
+            String valore = inizio + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(valore.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // null se il client non ha passato un cursore (prima pagina)
+        public static Cursore decodifica(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return null;
+            }
+            try {
+                String valore = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separatore = valore.indexOf('|');
+                return new Cursore(
+                    LocalDateTime.parse(valore.substring(0, separatore)),
+                    Long.parseLong(valore.substring(separatore + 1))
+                );
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursore non valido");
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.prenotazioni.dto;
+
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+
+import java.time.LocalDateTime;
+
+// Vista completa di una prenotazione con aula, utente e corso (corso null per blocchi e manutenzioni).
+// Costruita direttamente dalla query (constructor expression); i nomi dei campi sono le chiavi JSON.
+// statoTemporale: FUTURA, IN_CORSO o PASSATA rispetto all'ora del database.
+public record PrenotazioneDettaglio(
+    Long prenotazioneId,
+    LocalDateTime inizio,
+    LocalDateTime fine,
+    StatoPrenotazione stato,
+    String notePrenotazione,
+    LocalDateTime dataCreazione,
+    Long aulaId,
+    String aulaNome,
+    int aulaCapienza,
+    int aulaPiano,
+    Long utenteId,
+    String username,
+    String utenteNome,
+    String email,
+    String ruolo,
+    LocalDateTime utenteRegistrato,
+    LocalDateTime ultimoAccesso,
+    Long corsoId,
+    String corsoNome,
+    String docente,
+    String statoTemporale
+) {
+
+    public Pagina.Cursore cursore() {
+        return new Pagina.Cursore(inizio, prenotazioneId);
+    }
+}
@@ -0,0 +1,75 @@
+package com.prenotazioni.dto;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.prenotazioni.model.Prenotazione;
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Prenotazione in formato sintetico per le liste: solo id e nomi di aula, corso e utente invece delle
+// entità complete. Con ?fields=id,inizio,... Jackson scrive solo i campi richiesti (filtro FILTRO).
+@JsonFilter(PrenotazioneSummary.FILTRO)
+public record PrenotazioneSummary(
+    Long id,
+    LocalDateTime inizio,
+    LocalDateTime fine,
+    StatoPrenotazione stato,
+    String descrizione,
+    Long aulaId,
+    String aulaNome,
+    Long corsoId,
+    String corsoNome,
+    Long utenteId,
+    String username
+) {
+
+    public static final String FILTRO = "campiPrenotazione";
+
+    public static final Set<String> CAMPI = Arrays.stream(PrenotazioneSummary.class.getRecordComponents())
+        .map(c -> c.getName())
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+
+    public static PrenotazioneSummary da(Prenotazione prenotazione) {
+        return new PrenotazioneSummary(
+            prenotazione.getId(),
+            prenotazione.getInizio(),
+            prenotazione.getFine(),
+            prenotazione.getStato(),
+            prenotazione.getDescrizione(),
+            prenotazione.getAula().getId(),
+            prenotazione.getAula().getNome(),
+            prenotazione.getCorso() != null ? prenotazione.getCorso().getId() : null,
+            prenotazione.getCorso() != null ? prenotazione.getCorso().getNome() : null,
+            prenotazione.getUtente().getId(),
+            prenotazione.getUtente().getUsername()
+        );
+    }
+
+    public static List<PrenotazioneSummary> da(List<Prenotazione> prenotazioni) {
+        return prenotazioni.stream().map(PrenotazioneSummary::da).collect(Collectors.toList());
+    }
+
+    // Filtro per il parametro fields (elenco separato da virgole, null o vuoto = tutti i campi)
+    public static FilterProvider filtro(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return new SimpleFilterProvider().addFilter(FILTRO, SimpleBeanPropertyFilter.serializeAll());
+        }
+        Set<String> richiesti = new LinkedHashSet<>();
+        for (String campo : fields.split(",")) {
+            String nome = campo.trim();
+            if (!CAMPI.contains(nome)) {
+                throw new IllegalArgumentException("Campo '" + nome + "' non valido. Campi disponibili: " + String.join(",", CAMPI));
+            }
+            richiesti.add(nome);
+        }
+        return new SimpleFilterProvider().addFilter(FILTRO, SimpleBeanPropertyFilter.filterOutAllExcept(richiesti));
+    }
+}
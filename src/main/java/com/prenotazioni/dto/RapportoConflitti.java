@@ -0,0 +1,23 @@
+package com.prenotazioni.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Rapporto delle prenotazioni attive che si sovrappongono nella stessa aula.
+// conflittiTotali conta tutte le coppie trovate, l'elenco ne riporta al massimo "limite".
+public record RapportoConflitti(long prenotazioniEsaminate, long conflittiTotali, boolean troncato,
+                                List<Conflitto> conflitti) {
+
+    public static final int LIMITE_DEFAULT = 1000;
+    public static final int LIMITE_MASSIMO = 10000;
+
+    // Coppia di prenotazioni sovrapposte (prima inizia non dopo seconda) e intervallo in comune
+    public record Conflitto(Long aulaId, IntervalloPrenotazione prima, IntervalloPrenotazione seconda,
+                            LocalDateTime inizioSovrapposizione, LocalDateTime fineSovrapposizione) {
+
+        public static Conflitto tra(IntervalloPrenotazione prima, IntervalloPrenotazione seconda) {
+            LocalDateTime fine = prima.fine().isBefore(seconda.fine()) ? prima.fine() : seconda.fine();
+            return new Conflitto(prima.aulaId(), prima, seconda, seconda.inizio(), fine);
+        }
+    }
+}
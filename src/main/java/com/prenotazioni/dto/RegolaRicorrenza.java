@@ -0,0 +1,77 @@
+package com.prenotazioni.dto;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Regola di ripetizione in stile RRULE (FREQ, INTERVAL, COUNT, UNTIL) per le serie di lezioni.
+// Serve almeno uno tra ripetizioni e finoA; finoA è esclusivo.
+public record RegolaRicorrenza(Frequenza frequenza, int intervallo, Integer ripetizioni, LocalDateTime finoA) {
+
+    public static final int OCCORRENZE_MASSIME = 200;
+
+    public enum Frequenza {
+        DAILY,
+        WEEKLY,
+        MONTHLY
+    }
+
+    // Singola occorrenza della serie [inizio, fine)
+    public record Occorrenza(LocalDateTime inizio, LocalDateTime fine) {}
+
+    // Costruisce la regola dai parametri della richiesta; finoA accetta "YYYY-MM-DD" (giorno incluso) o una data-ora
+    public static RegolaRicorrenza daParametri(String frequenza, Integer intervallo, Integer ripetizioni, String finoA) {
+        Frequenza freq;
+        try {
+            freq = frequenza == null ? null : Frequenza.valueOf(frequenza.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            freq = null;
+        }
+        if (freq == null) {
+            throw new IllegalArgumentException("'frequenza' deve essere DAILY, WEEKLY o MONTHLY");
+        }
+        int passo = intervallo != null ? intervallo : 1;
+        if (passo <= 0) {
+            throw new IllegalArgumentException("'intervallo' deve essere positivo");
+        }
+        if (ripetizioni == null && finoA == null) {
+            throw new IllegalArgumentException("Indicare 'ripetizioni' oppure 'finoA'");
+        }
+        if (ripetizioni != null && (ripetizioni <= 0 || ripetizioni > OCCORRENZE_MASSIME)) {
+            throw new IllegalArgumentException("'ripetizioni' deve essere tra 1 e " + OCCORRENZE_MASSIME);
+        }
+        return new RegolaRicorrenza(freq, passo, ripetizioni, FinestraTemporale.parseData(finoA, true));
+    }
+
+    // Espande la serie a partire dalla prima occorrenza [inizio, fine); le occorrenze sono ordinate per inizio.
+    // Una durata pari o superiore al passo (es. 25 ore DAILY) farebbe sovrapporre occorrenze consecutive
+    public List<Occorrenza> espandi(LocalDateTime inizio, LocalDateTime fine) {
+        Duration durata = Duration.between(inizio, fine);
+        List<Occorrenza> occorrenze = new ArrayList<>();
+        for (int n = 0; ripetizioni == null || n < ripetizioni; n++) {
+            // Ogni occorrenza è calcolata dalla prima: con MONTHLY il giorno del mese non slitta
+            LocalDateTime inizioOccorrenza = avanza(inizio, (long) n * intervallo);
+            if (finoA != null && !inizioOccorrenza.isBefore(finoA)) {
+                break;
+            }
+            if (occorrenze.size() == OCCORRENZE_MASSIME) {
+                throw new IllegalArgumentException("La serie supera il massimo di " + OCCORRENZE_MASSIME + " occorrenze");
+            }
+            if (!occorrenze.isEmpty() && inizioOccorrenza.isBefore(occorrenze.get(occorrenze.size() - 1).fine())) {
+                throw new IllegalArgumentException("La durata di un'occorrenza supera il passo della ripetizione");
+            }
+            occorrenze.add(new Occorrenza(inizioOccorrenza, inizioOccorrenza.plus(durata)));
+        }
+        return occorrenze;
+    }
+
+    private LocalDateTime avanza(LocalDateTime da, long passi) {
+        return switch (frequenza) {
+            case DAILY -> da.plusDays(passi);
+            case WEEKLY -> da.plusWeeks(passi);
+            case MONTHLY -> da.plusMonths(passi);
+        };
+    }
+}
@@ -0,0 +1,26 @@
+package com.prenotazioni.dto;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Occupazione delle aule nel periodo [from, to): minuti prenotati / minuti disponibili nell'orario di apertura,
+// per aula, per piano e per fascia oraria (giorno della settimana + ora, sommando tutte le aule considerate)
+public record ReportOccupazione(LocalDateTime from, LocalDateTime to, int oraApertura, int oraChiusura,
+                                boolean weekend, List<PerAula> aule, List<PerPiano> piani, List<PerFascia> fasce) {
+
+    public record PerAula(Long aulaId, String nome, int piano, long minutiPrenotati, long minutiDisponibili,
+                          double utilizzo) {}
+
+    public record PerPiano(int piano, int aule, long minutiPrenotati, long minutiDisponibili, double utilizzo) {}
+
+    public record PerFascia(DayOfWeek giorno, int ora, long minutiPrenotati, long minutiDisponibili, double utilizzo) {}
+
+    // Rapporto arrotondato a quattro decimali (0 se non ci sono minuti disponibili)
+    public static double utilizzo(long minutiPrenotati, long minutiDisponibili) {
+        if (minutiDisponibili == 0) {
+            return 0.0;
+        }
+        return Math.round(minutiPrenotati * 10000.0 / minutiDisponibili) / 10000.0;
+    }
+}
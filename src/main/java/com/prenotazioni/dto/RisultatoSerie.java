@@ -0,0 +1,14 @@
+package com.prenotazioni.dto;
+
+import com.prenotazioni.model.Prenotazione;
+
+import java.util.List;
+
+// Esito di una serie: le prenotazioni create, oppure (se anche una sola occorrenza è occupata)
+// nessuna prenotazione e l'elenco delle prenotazioni esistenti in conflitto
+public record RisultatoSerie(List<Prenotazione> prenotazioni, List<IntervalloPrenotazione> conflitti) {
+
+    public boolean haConflitti() {
+        return !conflitti.isEmpty();
+    }
+}
@@ -0,0 +1,9 @@
+package com.prenotazioni.dto;
+
+import java.time.LocalDateTime;
+
+// Stato attuale di un'aula (LIBERA, PRENOTATA, BLOCCATA, MANUTENZIONE). prenotazioneId è la prenotazione
+// che determina lo stato (null se libera); prossimoCambio è l'istante in cui lo stato va ricalcolato
+// (fine della prenotazione in corso o inizio della successiva, null se non ci sono prenotazioni future)
+public record StatoAula(Long aulaId, String nome, int piano, String stato, Long prenotazioneId,
+                        LocalDateTime prossimoCambio) {}
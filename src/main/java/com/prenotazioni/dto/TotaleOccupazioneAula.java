@@ -0,0 +1,7 @@
+package com.prenotazioni.dto;
+
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+
+// Totali del riepilogo giornaliero di un'aula in un periodo, per stato (constructor expression in
+// OccupazioneGiornalieraRepository). prenotazioni conta ogni prenotazione nel giorno in cui inizia
+public record TotaleOccupazioneAula(Long aulaId, StatoPrenotazione stato, Long minutiPrenotati, Long prenotazioni) {}
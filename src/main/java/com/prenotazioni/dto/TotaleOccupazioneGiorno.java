@@ -0,0 +1,8 @@
+package com.prenotazioni.dto;
+
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+
+import java.time.LocalDate;
+
+// Totali del riepilogo giornaliero di un giorno, per stato, di tutte le aule o di una sola
+public record TotaleOccupazioneGiorno(LocalDate giorno, StatoPrenotazione stato, Long minutiPrenotati, Long prenotazioni) {}
@@ -1,9 +1,16 @@
 package com.prenotazioni.model;
 
+import com.prenotazioni.config.CacheConfig;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 @Entity
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"}) // Proxy di Hibernate (associazioni LAZY)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheConfig.REGIONE_AULE)
 public class Aula {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
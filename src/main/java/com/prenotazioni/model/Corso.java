@@ -1,8 +1,15 @@
 package com.prenotazioni.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.prenotazioni.config.CacheConfig;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"}) // Proxy di Hibernate (associazioni LAZY)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheConfig.REGIONE_CORSI)
 public class Corso {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,72 @@
+package com.prenotazioni.model;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+import org.springframework.data.domain.Persistable;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Riepilogo precalcolato: minuti prenotati e numero di prenotazioni per aula, giorno e stato.
+// Una prenotazione che attraversa la mezzanotte divide i minuti tra i giorni ma è contata solo in quello di inizio.
+// Aggiornato da PrenotazioneService insieme alle prenotazioni, ricostruibile da zero dall'admin.
+@Entity
+@Table(name = "occupazione_giornaliera")
+@Data
+@NoArgsConstructor
+public class OccupazioneGiornaliera implements Persistable<OccupazioneGiornaliera.Chiave> {
+
+    @EmbeddedId
+    private Chiave chiave;
+
+    @Column(name = "minuti_prenotati", nullable = false)
+    private long minutiPrenotati;
+
+    @Column(name = "numero_prenotazioni", nullable = false)
+    private int numeroPrenotazioni;
+
+    // La chiave è assegnata dall'applicazione: senza questo flag save() farebbe una SELECT prima di ogni INSERT
+    @Transient
+    private boolean nuova = true;
+
+    public OccupazioneGiornaliera(Chiave chiave) {
+        this.chiave = chiave;
+    }
+
+    @Override
+    public Chiave getId() {
+        return chiave;
+    }
+
+    @Override
+    public boolean isNew() {
+        return nuova;
+    }
+
+    @PostLoad
+    @PostPersist
+    void segnaEsistente() {
+        nuova = false;
+    }
+
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Chiave implements Serializable {
+        @Column(name = "aula_id", nullable = false)
+        private Long aulaId;
+
+        @Column(nullable = false)
+        private LocalDate giorno;
+
+        @Enumerated(EnumType.STRING)
+        @Column(nullable = false, length = 20)
+        private StatoPrenotazione stato;
+    }
+}
@@ -8,25 +8,34 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+// Aula, corso e utente sono caricati solo quando servono: le query che li usano li richiedono con
+// l'entity graph GRAFO_COMPLETO (vedi PrenotazioneRepository), le altre leggono solo la prenotazione
 @Entity
+@NamedEntityGraph(name = Prenotazione.GRAFO_COMPLETO, attributeNodes = {
+    @NamedAttributeNode("aula"),
+    @NamedAttributeNode("corso"),
+    @NamedAttributeNode("utente")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Prenotazione {
 
+    public static final String GRAFO_COMPLETO = "Prenotazione.completa";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "aula_id", nullable = false)
     private Aula aula;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "corso_id", nullable = true) // Può essere null per blocchi/manutenzioni
     private Corso corso;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "utente_id", nullable = false)
     private Utente utente;
     
@@ -1,6 +1,11 @@
 package com.prenotazioni.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.prenotazioni.config.CacheConfig;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,6 +16,9 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"}) // Proxy di Hibernate (associazioni LAZY)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheConfig.REGIONE_UTENTI)
 public class Utente {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -19,6 +27,8 @@ public class Utente {
     private String nome;
     private String email;
     private String ruolo;
+    
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY) // Mai nelle risposte JSON
     private String password;
     
     @Column(name = "data_registrazione", nullable = false, updatable = false)
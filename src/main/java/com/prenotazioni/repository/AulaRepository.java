@@ -1,15 +1,30 @@
 package com.prenotazioni.repository;
 
 import com.prenotazioni.model.Aula;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.jpa.SpecHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+// Gli elenchi delle aule ancora letti dal database (findAll, findAllOrderByPianoAndNome) sono nella cache delle
+// query di Hibernate (vedi CacheConfig): vengono invalidati automaticamente a ogni modifica della tabella aula
+// fatta tramite JPA. Filtri e conteggi del catalogo sono serviti dall'istantanea in memoria di AulaService
 public interface AulaRepository extends JpaRepository<Aula, Long> {
     
+    // Tutte le aule
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Override
+    List<Aula> findAll();
+    
     // Trova un'aula per nome (case insensitive)
     @Query("SELECT a FROM Aula a WHERE LOWER(a.nome) = LOWER(:nome)")
     Optional<Aula> findByNomeIgnoreCase(@Param("nome") String nome);
@@ -18,35 +33,35 @@ public interface AulaRepository extends JpaRepository<Aula, Long> {
     @Query("SELECT COUNT(a) > 0 FROM Aula a WHERE LOWER(a.nome) = LOWER(:nome)")
     boolean existsByNomeIgnoreCase(@Param("nome") String nome);
     
+    // Blocca la riga dell'aula fino alla fine della transazione (SELECT ... FOR UPDATE): serializza
+    // le prenotazioni della stessa aula tra tutte le istanze che condividono il database.
+    // L'attesa è limitata dal lock timeout (su MySQL anche da innodb_lock_wait_timeout, vedi application.properties)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "5000"))
+    @Query("SELECT a FROM Aula a WHERE a.id = :id")
+    Optional<Aula> findByIdForUpdate(@Param("id") Long id);
+    
+    // Come sopra per più aule; l'ordine per id evita deadlock tra transazioni che bloccano aule in comune
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "5000"))
+    @Query("SELECT a FROM Aula a WHERE a.id IN :ids ORDER BY a.id ASC")
+    List<Aula> findAllByIdInForUpdate(@Param("ids") Collection<Long> ids);
+    
     // Verifica se esiste un'aula con un certo nome escludendo un ID specifico
     @Query("SELECT COUNT(a) > 0 FROM Aula a WHERE LOWER(a.nome) = LOWER(:nome) AND a.id != :excludeId")
     boolean existsByNomeIgnoreCaseAndIdNot(@Param("nome") String nome, @Param("excludeId") Long excludeId);
     
-    // Trova aule per piano
-    List<Aula> findByPiano(int piano);
-    
-    // Trova aule con capienza maggiore o uguale a un valore
-    List<Aula> findByCapienzaGreaterThanEqual(int capienza);
-    
-    // Trova aule per range di capienza
-    @Query("SELECT a FROM Aula a WHERE a.capienza BETWEEN :minCapienza AND :maxCapienza ORDER BY a.capienza ASC")
-    List<Aula> findByCapienzaBetween(@Param("minCapienza") int minCapienza, @Param("maxCapienza") int maxCapienza);
-    
     // Trova aule ordinate per piano e nome
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     @Query("SELECT a FROM Aula a ORDER BY a.piano ASC, a.nome ASC")
     List<Aula> findAllOrderByPianoAndNome();
     
-    // Trova aule fisiche o virtuali
-    List<Aula> findByIsVirtual(boolean isVirtual);
-    
-    // Trova aule fisiche ordinate per piano e nome
-    @Query("SELECT a FROM Aula a WHERE a.isVirtual = false ORDER BY a.piano ASC, a.nome ASC")
-    List<Aula> findPhysicalRoomsOrderByPianoAndNome();
-    
-    // Trova aule virtuali ordinate per nome
-    @Query("SELECT a FROM Aula a WHERE a.isVirtual = true ORDER BY a.nome ASC")
-    List<Aula> findVirtualRoomsOrderByNome();
-    
-    // Conta aule fisiche e virtuali
-    long countByIsVirtual(boolean isVirtual);
+    // Come sopra ma sempre dal database, per il riallineamento con le modifiche fatte da altre istanze: salta
+    // la cache delle query e quella di secondo livello, e aggiorna quest'ultima con i valori letti
+    @QueryHints({
+        @QueryHint(name = SpecHints.HINT_SPEC_CACHE_RETRIEVE_MODE, value = "BYPASS"),
+        @QueryHint(name = SpecHints.HINT_SPEC_CACHE_STORE_MODE, value = "REFRESH")
+    })
+    @Query("SELECT a FROM Aula a ORDER BY a.piano ASC, a.nome ASC")
+    List<Aula> findAllOrderByPianoAndNomeDalDatabase();
 }
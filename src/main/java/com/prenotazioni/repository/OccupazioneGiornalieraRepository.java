@@ -0,0 +1,49 @@
+package com.prenotazioni.repository;
+
+import com.prenotazioni.dto.TotaleOccupazioneAula;
+import com.prenotazioni.dto.TotaleOccupazioneGiorno;
+import com.prenotazioni.model.OccupazioneGiornaliera;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface OccupazioneGiornalieraRepository extends JpaRepository<OccupazioneGiornaliera, OccupazioneGiornaliera.Chiave> {
+
+    // Totali per aula e stato nei giorni [da, a)
+    @Query("SELECT new com.prenotazioni.dto.TotaleOccupazioneAula(" +
+           "o.chiave.aulaId, o.chiave.stato, SUM(o.minutiPrenotati), SUM(o.numeroPrenotazioni)) " +
+           "FROM OccupazioneGiornaliera o " +
+           "WHERE o.chiave.giorno >= :da AND o.chiave.giorno < :a " +
+           "AND (:aulaId IS NULL OR o.chiave.aulaId = :aulaId) " +
+           "GROUP BY o.chiave.aulaId, o.chiave.stato " +
+           "ORDER BY o.chiave.aulaId ASC, o.chiave.stato ASC")
+    List<TotaleOccupazioneAula> totaliPerAula(@Param("da") LocalDate da,
+                                              @Param("a") LocalDate a,
+                                              @Param("aulaId") Long aulaId);
+
+    // Totali per giorno e stato nei giorni [da, a), di tutte le aule o di una sola
+    @Query("SELECT new com.prenotazioni.dto.TotaleOccupazioneGiorno(" +
+           "o.chiave.giorno, o.chiave.stato, SUM(o.minutiPrenotati), SUM(o.numeroPrenotazioni)) " +
+           "FROM OccupazioneGiornaliera o " +
+           "WHERE o.chiave.giorno >= :da AND o.chiave.giorno < :a " +
+           "AND (:aulaId IS NULL OR o.chiave.aulaId = :aulaId) " +
+           "GROUP BY o.chiave.giorno, o.chiave.stato " +
+           "ORDER BY o.chiave.giorno ASC, o.chiave.stato ASC")
+    List<TotaleOccupazioneGiorno> totaliPerGiorno(@Param("da") LocalDate da,
+                                                  @Param("a") LocalDate a,
+                                                  @Param("aulaId") Long aulaId);
+
+    // Svuota il riepilogo di un'aula prima di ricostruirlo
+    @Modifying
+    @Query("DELETE FROM OccupazioneGiornaliera o WHERE o.chiave.aulaId = :aulaId")
+    int deleteByAulaId(@Param("aulaId") Long aulaId);
+
+    // Righe rimaste di aule eliminate
+    @Modifying
+    @Query("DELETE FROM OccupazioneGiornaliera o WHERE o.chiave.aulaId NOT IN (SELECT a.id FROM Aula a)")
+    int deleteAuleRimosse();
+}
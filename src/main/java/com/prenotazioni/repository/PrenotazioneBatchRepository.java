@@ -0,0 +1,73 @@
+package com.prenotazioni.repository;
+
+import com.prenotazioni.model.Prenotazione;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+// Inserimenti multipli di prenotazioni via JDBC batch. Con GenerationType.IDENTITY Hibernate esegue
+// una INSERT per riga (deve leggere subito l'id generato): qui le righe vanno al database in blocchi.
+// Su MySQL rewriteBatchedStatements=true (vedi application.properties) trasforma ogni blocco in
+// un'unica INSERT multi-riga.
+@Repository
+public class PrenotazioneBatchRepository {
+
+    private static final int DIMENSIONE_BATCH = 100;
+
+    private static final String INSERT =
+        "INSERT INTO prenotazione (aula_id, corso_id, utente_id, inizio, fine, stato, descrizione, data_creazione) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Inserisce le prenotazioni nella transazione corrente e assegna a ognuna l'id generato dal database
+    // (chiavi generate restituite dal driver per ogni blocco, nell'ordine di inserimento)
+    public void inserisci(List<Prenotazione> prenotazioni) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connessione -> {
+            try (PreparedStatement ps = connessione.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS)) {
+                for (int da = 0; da < prenotazioni.size(); da += DIMENSIONE_BATCH) {
+                    List<Prenotazione> blocco = prenotazioni.subList(da, Math.min(da + DIMENSIONE_BATCH, prenotazioni.size()));
+                    for (Prenotazione p : blocco) {
+                        imposta(ps, p);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    try (ResultSet chiavi = ps.getGeneratedKeys()) {
+                        for (Prenotazione p : blocco) {
+                            if (!chiavi.next()) {
+                                throw new SQLException("Il database non ha restituito gli id generati");
+                            }
+                            p.setId(chiavi.getLong(1));
+                        }
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    private static void imposta(PreparedStatement ps, Prenotazione p) throws SQLException {
+        ps.setLong(1, p.getAula().getId());
+        if (p.getCorso() != null) {
+            ps.setLong(2, p.getCorso().getId());
+        } else {
+            ps.setNull(2, Types.BIGINT);
+        }
+        ps.setLong(3, p.getUtente().getId());
+        ps.setTimestamp(4, Timestamp.valueOf(p.getInizio()));
+        ps.setTimestamp(5, Timestamp.valueOf(p.getFine()));
+        ps.setString(6, p.getStato().name());
+        ps.setString(7, p.getDescrizione());
+        ps.setTimestamp(8, Timestamp.valueOf(p.getDataCreazione()));
+    }
+}
@@ -1,30 +1,66 @@
 package com.prenotazioni.repository;
 
+import com.prenotazioni.dto.IntervalloPrenotazione;
+import com.prenotazioni.dto.PrenotazioneDettaglio;
+import com.prenotazioni.model.Aula;
 import com.prenotazioni.model.Prenotazione;
 import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+// Le query sul periodo usano la forma p.inizio < :fine AND p.fine > :inizio e, quando filtrano per aula,
+// elencano gli stati attivi invece di escludere ANNULLATA: così MySQL può usare l'indice
+// (aula_id, stato, inizio, fine) con un intervallo su inizio per ciascuno stato (vedi db/migration).
+// Aula, corso e utente sono LAZY: i metodi i cui risultati vengono mostrati con questi dati usano l'entity
+// graph Prenotazione.GRAFO_COMPLETO (una sola query con join), gli altri leggono solo la prenotazione.
 public interface PrenotazioneRepository extends JpaRepository<Prenotazione, Long> {
     
+    // Vista completa (PrenotazioneDettaglio) costruita dalla query: prenotazione p, aula a, utente u, corso c
+    String SELECT_DETTAGLIO = "SELECT new com.prenotazioni.dto.PrenotazioneDettaglio(" +
+           "p.id, p.inizio, p.fine, p.stato, p.descrizione, p.dataCreazione, " +
+           "a.id, a.nome, a.capienza, a.piano, " +
+           "u.id, u.username, u.nome, u.email, u.ruolo, u.dataRegistrazione, u.ultimoAccesso, " +
+           "c.id, c.nome, c.docente, " +
+           "CASE WHEN p.inizio > CURRENT_TIMESTAMP THEN 'FUTURA' " +
+           "     WHEN p.fine < CURRENT_TIMESTAMP THEN 'PASSATA' " +
+           "     ELSE 'IN_CORSO' END) " +
+           "FROM Prenotazione p " +
+           "JOIN p.aula a " +
+           "JOIN p.utente u " +
+           "LEFT JOIN p.corso c ";
+    
     // Trova prenotazioni che si sovrappongono con un periodo dato
     @Query("SELECT p FROM Prenotazione p WHERE p.aula.id = :aulaId " +
-           "AND p.stato != 'ANNULLATA' " +
-           "AND ((p.inizio <= :inizio AND p.fine > :inizio) " +
-           "OR (p.inizio < :fine AND p.fine >= :fine) " +
-           "OR (p.inizio >= :inizio AND p.fine <= :fine))")
+           "AND p.stato IN ('PRENOTATA', 'BLOCCATA', 'MANUTENZIONE') " +
+           "AND p.inizio < :fine AND p.fine > :inizio")
     List<Prenotazione> findConflittingReservations(@Param("aulaId") Long aulaId, 
                                                    @Param("inizio") LocalDateTime inizio, 
                                                    @Param("fine") LocalDateTime fine);
     
+    // Verifica sul database se esiste una prenotazione attiva dell'aula che si sovrappone a [inizio, fine)
+    @Query("SELECT COUNT(p) > 0 FROM Prenotazione p WHERE p.aula.id = :aulaId " +
+           "AND p.stato IN ('PRENOTATA', 'BLOCCATA', 'MANUTENZIONE') " +
+           "AND p.inizio < :fine AND p.fine > :inizio")
+    boolean existsSovrapposizione(@Param("aulaId") Long aulaId,
+                                  @Param("inizio") LocalDateTime inizio,
+                                  @Param("fine") LocalDateTime fine);
+    
     // Trova prenotazioni di un'aula in un periodo specifico
+    @EntityGraph(Prenotazione.GRAFO_COMPLETO)
     @Query("SELECT p FROM Prenotazione p WHERE p.aula.id = :aulaId " +
-           "AND p.stato != 'ANNULLATA' " +
+           "AND p.stato IN ('PRENOTATA', 'BLOCCATA', 'MANUTENZIONE') " +
            "AND p.inizio <= :fine AND p.fine >= :inizio " +
            "ORDER BY p.inizio ASC")
     List<Prenotazione> findByAulaAndPeriod(@Param("aulaId") Long aulaId,
@@ -33,132 +69,214 @@ public interface PrenotazioneRepository extends JpaRepository<Prenotazione, Long
     
     // Trova prenotazioni attive in un momento specifico
     @Query("SELECT p FROM Prenotazione p WHERE p.aula.id = :aulaId " +
-           "AND p.stato != 'ANNULLATA' " +
+           "AND p.stato IN ('PRENOTATA', 'BLOCCATA', 'MANUTENZIONE') " +
            "AND p.inizio <= :momento AND p.fine > :momento " +
            "ORDER BY p.stato DESC") // MANUTENZIONE, BLOCCATA, PRENOTATA
     List<Prenotazione> findActiveReservations(@Param("aulaId") Long aulaId,
                                              @Param("momento") LocalDateTime momento);
     
     // Trova prenotazioni per utente
+    @EntityGraph(Prenotazione.GRAFO_COMPLETO)
     @Query("SELECT p FROM Prenotazione p WHERE p.utente.id = :utenteId " +
            "ORDER BY p.inizio DESC")
     List<Prenotazione> findByUtenteId(@Param("utenteId") Long utenteId);
     
     // Trova aule libere in un periodo
-    @Query("SELECT a.id FROM Aula a WHERE a.id NOT IN " +
-           "(SELECT DISTINCT p.aula.id FROM Prenotazione p WHERE p.stato != 'ANNULLATA' " +
-           "AND ((p.inizio <= :inizio AND p.fine > :inizio) " +
-           "OR (p.inizio < :fine AND p.fine >= :fine) " +
-           "OR (p.inizio >= :inizio AND p.fine <= :fine)))")
+    @Query("SELECT a.id FROM Aula a WHERE NOT EXISTS " +
+           "(SELECT 1 FROM Prenotazione p WHERE p.aula.id = a.id " +
+           "AND p.stato IN ('PRENOTATA', 'BLOCCATA', 'MANUTENZIONE') " +
+           "AND p.inizio < :fine AND p.fine > :inizio)")
     List<Long> findAuleLibere(@Param("inizio") LocalDateTime inizio, 
                               @Param("fine") LocalDateTime fine);
     
+    // Trova aule libere in un periodo con filtri opzionali su capienza, piano e tipo,
+    // ordinate per miglior adattamento (prima la capienza più piccola sufficiente)
+    @Query("SELECT a FROM Aula a WHERE NOT EXISTS " +
+           "(SELECT 1 FROM Prenotazione p WHERE p.aula.id = a.id " +
+           "AND p.stato IN ('PRENOTATA', 'BLOCCATA', 'MANUTENZIONE') " +
+           "AND p.inizio < :fine AND p.fine > :inizio) " +
+           "AND a.capienza >= :minCapienza " +
+           "AND (:piano IS NULL OR a.piano = :piano) " +
+           "AND (:isVirtual IS NULL OR a.isVirtual = :isVirtual) " +
+           "ORDER BY a.capienza ASC, a.piano ASC, a.nome ASC")
+    List<Aula> findAuleLibereConFiltri(@Param("inizio") LocalDateTime inizio,
+                                       @Param("fine") LocalDateTime fine,
+                                       @Param("minCapienza") int minCapienza,
+                                       @Param("piano") Integer piano,
+                                       @Param("isVirtual") Boolean isVirtual);
+    
     // Trova prenotazioni per stato
+    @EntityGraph(Prenotazione.GRAFO_COMPLETO)
     List<Prenotazione> findByStato(StatoPrenotazione stato);
     
     // Trova prenotazioni future
-    @Query("SELECT p FROM Prenotazione p WHERE p.inizio > :ora AND p.stato != 'ANNULLATA' " +
+    @EntityGraph(Prenotazione.GRAFO_COMPLETO)
+    @Query("SELECT p FROM Prenotazione p WHERE p.inizio > :ora AND p.stato IN ('PRENOTATA', 'BLOCCATA', 'MANUTENZIONE') " +
            "ORDER BY p.inizio ASC")
     List<Prenotazione> findPrenotazioniFuture(@Param("ora") LocalDateTime ora);
     
-    // Vista completa prenotazioni per una specifica aula
-    @Query("SELECT new map(" +
-           "p.id as prenotazioneId, " +
-           "p.inizio as inizio, " + 
-           "p.fine as fine, " +
-           "p.stato as stato, " +
-           "p.descrizione as notePrenotazione, " +
-           "p.dataCreazione as dataCreazione, " +
-           "a.id as aulaId, " +
-           "a.nome as aulaNome, " +
-           "a.capienza as aulaCapienza, " +
-           "a.piano as aulaPiano, " +
-           "u.id as utenteId, " +
-           "u.username as username, " +
-           "u.nome as utenteNome, " +
-           "u.email as email, " +
-           "u.ruolo as ruolo, " +
-           "u.dataRegistrazione as utenteRegistrato, " +
-           "u.ultimoAccesso as ultimoAccesso, " +
-           "c.id as corsoId, " +
-           "c.nome as corsoNome, " +
-           "c.docente as docente, " +
-           "CASE WHEN p.inizio > CURRENT_TIMESTAMP THEN 'FUTURA' " +
-           "     WHEN p.fine < CURRENT_TIMESTAMP THEN 'PASSATA' " +
-           "     ELSE 'IN_CORSO' END as statoTemporale) " +
-           "FROM Prenotazione p " +
-           "JOIN p.aula a " +
-           "JOIN p.utente u " +
-           "LEFT JOIN p.corso c " +
+    // Paginazione per (inizio, id) decrescenti: ogni elenco ha una query per la prima pagina e una per le
+    // successive, così nessuna delle due dipende da un parametro nullo e il piano resta lo stesso a ogni
+    // esecuzione (anche con gli statement preparati lato server attivati da useCursorFetch). Nelle pagine
+    // successive la condizione p.inizio <= :cursoreInizio delimita l'intervallo dell'indice su inizio,
+    // l'altra esclude le righe già lette con lo stesso inizio
+    String DOPO_CURSORE = "p.inizio <= :cursoreInizio AND (p.inizio < :cursoreInizio OR p.id < :cursoreId) ";
+    
+    // Vista completa prenotazioni per una specifica aula in un periodo: prima pagina
+    @Query(SELECT_DETTAGLIO +
            "WHERE a.id = :aulaId " +
-           "ORDER BY p.inizio DESC")
-    List<Map<String, Object>> findCompleteDetailsByAulaId(@Param("aulaId") Long aulaId);
-    
-    // Vista completa di tutte le prenotazioni
-    @Query("SELECT new map(" +
-           "p.id as prenotazioneId, " +
-           "p.inizio as inizio, " + 
-           "p.fine as fine, " +
-           "p.stato as stato, " +
-           "p.descrizione as notePrenotazione, " +
-           "p.dataCreazione as dataCreazione, " +
-           "a.id as aulaId, " +
-           "a.nome as aulaNome, " +
-           "a.capienza as aulaCapienza, " +
-           "a.piano as aulaPiano, " +
-           "u.id as utenteId, " +
-           "u.username as username, " +
-           "u.nome as utenteNome, " +
-           "u.email as email, " +
-           "u.ruolo as ruolo, " +
-           "u.dataRegistrazione as utenteRegistrato, " +
-           "u.ultimoAccesso as ultimoAccesso, " +
-           "c.id as corsoId, " +
-           "c.nome as corsoNome, " +
-           "c.docente as docente, " +
-           "CASE WHEN p.inizio > CURRENT_TIMESTAMP THEN 'FUTURA' " +
-           "     WHEN p.fine < CURRENT_TIMESTAMP THEN 'PASSATA' " +
-           "     ELSE 'IN_CORSO' END as statoTemporale) " +
-           "FROM Prenotazione p " +
-           "JOIN p.aula a " +
-           "JOIN p.utente u " +
-           "LEFT JOIN p.corso c " +
-           "ORDER BY p.inizio DESC")
-    List<Map<String, Object>> findAllCompleteDetails();
+           "AND p.inizio < :fine AND p.fine > :inizio " +
+           "ORDER BY p.inizio DESC, p.id DESC")
+    List<PrenotazioneDettaglio> findCompleteDetailsByAulaId(@Param("aulaId") Long aulaId,
+                                                          @Param("inizio") LocalDateTime inizio,
+                                                          @Param("fine") LocalDateTime fine,
+                                                          Limit limit);
+    
+    // Come sopra, dalla riga successiva al cursore
+    @Query(SELECT_DETTAGLIO +
+           "WHERE a.id = :aulaId " +
+           "AND p.inizio < :fine AND p.fine > :inizio " +
+           "AND " + DOPO_CURSORE +
+           "ORDER BY p.inizio DESC, p.id DESC")
+    List<PrenotazioneDettaglio> findCompleteDetailsByAulaIdDopo(@Param("aulaId") Long aulaId,
+                                                              @Param("inizio") LocalDateTime inizio,
+                                                              @Param("fine") LocalDateTime fine,
+                                                              @Param("cursoreInizio") LocalDateTime cursoreInizio,
+                                                              @Param("cursoreId") Long cursoreId,
+                                                              Limit limit);
+    
+    // Vista completa di tutte le prenotazioni: prima pagina
+    @Query(SELECT_DETTAGLIO +
+           "ORDER BY p.inizio DESC, p.id DESC")
+    List<PrenotazioneDettaglio> findAllCompleteDetails(Limit limit);
+    
+    // Come sopra, dalla riga successiva al cursore
+    @Query(SELECT_DETTAGLIO +
+           "WHERE " + DOPO_CURSORE +
+           "ORDER BY p.inizio DESC, p.id DESC")
+    List<PrenotazioneDettaglio> findAllCompleteDetailsDopo(@Param("cursoreInizio") LocalDateTime cursoreInizio,
+                                                         @Param("cursoreId") Long cursoreId,
+                                                         Limit limit);
+    
+    // Vista completa in streaming per l'esportazione, con filtri opzionali su aula e stato. Il periodo è sempre
+    // indicato (chi non lo filtra passa estremi molto lontani): p.inizio < :fine è un intervallo dell'indice su
+    // inizio, letto già nell'ordine richiesto. Le righe vengono lette dal database a blocchi (fetch size) e non
+    // materializzate in memoria.
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(SELECT_DETTAGLIO +
+           "WHERE p.inizio < :fine AND p.fine > :inizio " +
+           "AND (:aulaId IS NULL OR a.id = :aulaId) " +
+           "AND (:stato IS NULL OR p.stato = :stato) " +
+           "ORDER BY p.inizio ASC, p.id ASC")
+    Stream<PrenotazioneDettaglio> streamCompleteDetails(@Param("inizio") LocalDateTime inizio,
+                                                      @Param("fine") LocalDateTime fine,
+                                                      @Param("aulaId") Long aulaId,
+                                                      @Param("stato") StatoPrenotazione stato);
+    
+    // Intervalli attivi in streaming ordinati per aula e inizio, per la verifica delle sovrapposizioni.
+    // Filtri opzionali sul periodo; il filtro per aule si applica solo se tutteLeAule è false.
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT new com.prenotazioni.dto.IntervalloPrenotazione(p.id, p.aula.id, p.inizio, p.fine, p.stato) " +
+           "FROM Prenotazione p WHERE p.stato != 'ANNULLATA' " +
+           "AND (:inizio IS NULL OR p.fine > :inizio) " +
+           "AND (:fine IS NULL OR p.inizio < :fine) " +
+           "AND (:tutteLeAule = true OR p.aula.id IN :aulaIds) " +
+           "ORDER BY p.aula.id ASC, p.inizio ASC, p.id ASC")
+    Stream<IntervalloPrenotazione> streamIntervalliAttivi(@Param("inizio") LocalDateTime inizio,
+                                                          @Param("fine") LocalDateTime fine,
+                                                          @Param("tutteLeAule") boolean tutteLeAule,
+                                                          @Param("aulaIds") Collection<Long> aulaIds);
+    
+    // Intervalli di tutte le prenotazioni di un'aula (anche annullate) in streaming, per ricostruire i riepiloghi
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT new com.prenotazioni.dto.IntervalloPrenotazione(p.id, p.aula.id, p.inizio, p.fine, p.stato) " +
+           "FROM Prenotazione p WHERE p.aula.id = :aulaId")
+    Stream<IntervalloPrenotazione> streamIntervalliByAulaId(@Param("aulaId") Long aulaId);
     
     // Dettagli completi per una singola prenotazione
-    @Query("SELECT new map(" +
-           "p.id as prenotazioneId, " +
-           "p.inizio as inizio, " + 
-           "p.fine as fine, " +
-           "p.stato as stato, " +
-           "p.descrizione as notePrenotazione, " +
-           "p.dataCreazione as dataCreazione, " +
-           "a.id as aulaId, " +
-           "a.nome as aulaNome, " +
-           "a.capienza as aulaCapienza, " +
-           "a.piano as aulaPiano, " +
-           "u.id as utenteId, " +
-           "u.username as username, " +
-           "u.nome as utenteNome, " +
-           "u.email as email, " +
-           "u.ruolo as ruolo, " +
-           "u.dataRegistrazione as utenteRegistrato, " +
-           "u.ultimoAccesso as ultimoAccesso, " +
-           "c.id as corsoId, " +
-           "c.nome as corsoNome, " +
-           "c.docente as docente, " +
-           "CASE WHEN p.inizio > CURRENT_TIMESTAMP THEN 'FUTURA' " +
-           "     WHEN p.fine < CURRENT_TIMESTAMP THEN 'PASSATA' " +
-           "     ELSE 'IN_CORSO' END as statoTemporale) " +
-           "FROM Prenotazione p " +
-           "JOIN p.aula a " +
-           "JOIN p.utente u " +
-           "LEFT JOIN p.corso c " +
+    @Query(SELECT_DETTAGLIO +
            "WHERE p.id = :prenotazioneId")
-    List<Map<String, Object>> findCompleteDetailsByPrenotazioneId(@Param("prenotazioneId") Long prenotazioneId);
+    List<PrenotazioneDettaglio> findCompleteDetailsByPrenotazioneId(@Param("prenotazioneId") Long prenotazioneId);
+    
+    // Singola prenotazione con aula, corso e utente, per le risposte che la mostrano per intero
+    @EntityGraph(Prenotazione.GRAFO_COMPLETO)
+    Optional<Prenotazione> findConDettagliById(Long id);
     
     // Trova tutte le prenotazioni per una specifica aula
     @Query("SELECT p FROM Prenotazione p WHERE p.aula.id = :aulaId ORDER BY p.inizio ASC")
     List<Prenotazione> findByAulaId(@Param("aulaId") Long aulaId);
+    
+    // Prenotazioni non annullate di un insieme di aule che si sovrappongono a un periodo,
+    // con aula, utente e corso caricati nella stessa query (usata per lo stato attuale delle aule)
+    @Query("SELECT p FROM Prenotazione p " +
+           "JOIN FETCH p.aula a " +
+           "JOIN FETCH p.utente " +
+           "LEFT JOIN FETCH p.corso " +
+           "WHERE a.id IN :aulaIds " +
+           "AND p.stato IN ('PRENOTATA', 'BLOCCATA', 'MANUTENZIONE') " +
+           "AND p.inizio < :fine AND p.fine > :inizio " +
+           "ORDER BY p.inizio ASC")
+    List<Prenotazione> findAttiveByAulaIdInAndPeriodo(@Param("aulaIds") Collection<Long> aulaIds,
+                                                      @Param("inizio") LocalDateTime inizio,
+                                                      @Param("fine") LocalDateTime fine);
+    
+    // Prime :limit prenotazioni PRENOTATA di ogni aula nel periodo, numerate per aula con row_number()
+    // così che il limite per aula venga applicato dal database e non in memoria
+    @Query("SELECT p FROM Prenotazione p " +
+           "JOIN FETCH p.aula " +
+           "JOIN FETCH p.utente " +
+           "LEFT JOIN FETCH p.corso " +
+           "WHERE p.id IN (" +
+           "  SELECT r.id FROM (" +
+           "    SELECT q.id AS id, row_number() OVER (PARTITION BY q.aula.id ORDER BY q.inizio, q.id) AS rn " +
+           "    FROM Prenotazione q " +
+           "    WHERE q.aula.id IN :aulaIds " +
+           "    AND q.stato = 'PRENOTATA' " +
+           "    AND q.inizio < :fine AND q.fine > :inizio" +
+           "  ) r WHERE r.rn <= :limite) " +
+           "ORDER BY p.inizio ASC")
+    List<Prenotazione> findPrenotateByAulaIdInAndPeriodo(@Param("aulaIds") Collection<Long> aulaIds,
+                                                         @Param("inizio") LocalDateTime inizio,
+                                                         @Param("fine") LocalDateTime fine,
+                                                         @Param("limite") int limite);
+    
+    // Tutte le prenotazioni, paginate per (inizio, id) decrescenti (vedi DOPO_CURSORE): prima pagina
+    @EntityGraph(Prenotazione.GRAFO_COMPLETO)
+    @Query("SELECT p FROM Prenotazione p " +
+           "ORDER BY p.inizio DESC, p.id DESC")
+    List<Prenotazione> findPrimaPagina(Limit limit);
+    
+    // Come sopra, dalla riga successiva al cursore
+    @EntityGraph(Prenotazione.GRAFO_COMPLETO)
+    @Query("SELECT p FROM Prenotazione p " +
+           "WHERE " + DOPO_CURSORE +
+           "ORDER BY p.inizio DESC, p.id DESC")
+    List<Prenotazione> findPaginaDopo(@Param("cursoreInizio") LocalDateTime cursoreInizio,
+                                      @Param("cursoreId") Long cursoreId,
+                                      Limit limit);
+    
+    // Intervalli delle prenotazioni attive di un'aula che si sovrappongono a [inizio, fine), ordinati per inizio
+    @Query("SELECT new com.prenotazioni.dto.IntervalloPrenotazione(p.id, p.aula.id, p.inizio, p.fine, p.stato) " +
+           "FROM Prenotazione p WHERE p.aula.id = :aulaId " +
+           "AND p.stato IN ('PRENOTATA', 'BLOCCATA', 'MANUTENZIONE') " +
+           "AND p.inizio < :fine AND p.fine > :inizio " +
+           "ORDER BY p.inizio ASC")
+    List<IntervalloPrenotazione> findIntervalliAttiviByAulaAndPeriodo(@Param("aulaId") Long aulaId,
+                                                                      @Param("inizio") LocalDateTime inizio,
+                                                                      @Param("fine") LocalDateTime fine);
+    
+    // Come sopra, per più aule insieme: ordinati per aula e inizio
+    @Query("SELECT new com.prenotazioni.dto.IntervalloPrenotazione(p.id, p.aula.id, p.inizio, p.fine, p.stato) " +
+           "FROM Prenotazione p WHERE p.aula.id IN :aulaIds " +
+           "AND p.stato IN ('PRENOTATA', 'BLOCCATA', 'MANUTENZIONE') " +
+           "AND p.inizio < :fine AND p.fine > :inizio " +
+           "ORDER BY p.aula.id ASC, p.inizio ASC")
+    List<IntervalloPrenotazione> findIntervalliAttiviByAulaIdInAndPeriodo(@Param("aulaIds") Collection<Long> aulaIds,
+                                                                          @Param("inizio") LocalDateTime inizio,
+                                                                          @Param("fine") LocalDateTime fine);
+    
+    // Intervalli di tutte le prenotazioni attive (solo id, aula, orari e stato) per l'indice di disponibilità
+    @Query("SELECT new com.prenotazioni.dto.IntervalloPrenotazione(p.id, p.aula.id, p.inizio, p.fine, p.stato) " +
+           "FROM Prenotazione p WHERE p.stato != 'ANNULLATA'")
+    List<IntervalloPrenotazione> findIntervalliAttivi();
 }
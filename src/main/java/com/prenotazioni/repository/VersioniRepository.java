@@ -0,0 +1,56 @@
+package com.prenotazioni.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Versioni dei dati sul database (vedi V5__versioni_dati.sql), lette da VersioniDati per gli ETag.
+// Gli incrementi vanno eseguiti nella transazione che modifica i dati. Via JDBC: la colonna
+// aula.versione_prenotazioni non è mappata, e aggiornarla non deve invalidare la cache delle aule.
+@Repository
+public class VersioniRepository {
+
+    public static final String PRENOTAZIONI = "prenotazioni";
+    public static final String AULE = "aule";
+    public static final String UTENTI = "utenti";
+    public static final String ANAGRAFICA = "anagrafica";
+
+    private static final String LEGGI =
+        "SELECT nome, valore FROM versione_dati " +
+        "UNION ALL SELECT '" + PRENOTAZIONI + "', COALESCE(SUM(versione_prenotazioni), 0) FROM aula";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Tutte le versioni con una sola query
+    public Map<String, Long> leggi() {
+        Map<String, Long> versioni = new HashMap<>();
+        jdbcTemplate.query(LEGGI, rs -> {
+            versioni.put(rs.getString(1), rs.getLong(2));
+        });
+        return versioni;
+    }
+
+    // Prenotazioni create o modificate nelle aule indicate (righe già bloccate dalla transazione)
+    public void incrementaPrenotazioni(Collection<Long> aulaIds) {
+        List<Object[]> parametri = aulaIds.stream().map(id -> new Object[] {id}).toList();
+        jdbcTemplate.batchUpdate("UPDATE aula SET versione_prenotazioni = versione_prenotazioni + 1 WHERE id = ?", parametri);
+    }
+
+    // AULE, UTENTI o ANAGRAFICA
+    public long leggi(String nome) {
+        return jdbcTemplate.queryForObject("SELECT valore FROM versione_dati WHERE nome = ?", Long.class, nome);
+    }
+
+    // Restituisce la nuova versione: la riga resta bloccata fino alla fine della transazione, quindi nessun
+    // altro può incrementarla prima del commit
+    public long incrementa(String nome) {
+        jdbcTemplate.update("UPDATE versione_dati SET valore = valore + 1 WHERE nome = ?", nome);
+        return leggi(nome);
+    }
+}
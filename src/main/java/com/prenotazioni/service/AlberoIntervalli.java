@@ -0,0 +1,165 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.dto.IntervalloPrenotazione;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Albero di intervalli [inizio, fine) ordinato per (inizio, id): un treap (albero binario di ricerca bilanciato
+// con priorità casuali) in cui ogni nodo conserva la fine massima del proprio sottoalbero. Le ricerche scendono
+// solo nei sottoalberi che possono contenere sovrapposizioni, qualunque sia la durata degli intervalli:
+// inserimento, rimozione e verifica di una sovrapposizione costano O(log n), l'elenco di k sovrapposizioni
+// O((k + 1) log n) (valori attesi). Non è thread-safe: la sincronizzazione è di chi lo usa (IndiceAula).
+class AlberoIntervalli {
+
+    private static final Comparator<IntervalloPrenotazione> ORDINE =
+        Comparator.comparing(IntervalloPrenotazione::inizio).thenComparing(IntervalloPrenotazione::id);
+
+    private static final class Nodo {
+        final IntervalloPrenotazione intervallo;
+        final int priorita = ThreadLocalRandom.current().nextInt();
+        LocalDateTime fineMassima;
+        Nodo sinistro;
+        Nodo destro;
+
+        Nodo(IntervalloPrenotazione intervallo) {
+            this.intervallo = intervallo;
+            this.fineMassima = intervallo.fine();
+        }
+
+        void aggiornaFineMassima() {
+            fineMassima = intervallo.fine();
+            if (sinistro != null && sinistro.fineMassima.isAfter(fineMassima)) {
+                fineMassima = sinistro.fineMassima;
+            }
+            if (destro != null && destro.fineMassima.isAfter(fineMassima)) {
+                fineMassima = destro.fineMassima;
+            }
+        }
+    }
+
+    private Nodo radice;
+
+    // L'intervallo non deve essere già presente (stesso id e inizio)
+    void aggiungi(IntervalloPrenotazione intervallo) {
+        radice = aggiungi(radice, new Nodo(intervallo));
+    }
+
+    // Rimuove l'intervallo con lo stesso inizio e id, se presente
+    void rimuovi(IntervalloPrenotazione intervallo) {
+        radice = rimuovi(radice, intervallo);
+    }
+
+    // Ricerca classica su albero di intervalli: se il sottoalbero sinistro contiene una fine successiva a
+    // inizio si scende a sinistra (se lì non c'è sovrapposizione, a destra gli intervalli iniziano tutti
+    // dopo fine), altrimenti a destra. Un solo cammino radice-foglia
+    boolean haSovrapposizioni(LocalDateTime inizio, LocalDateTime fine) {
+        Nodo nodo = radice;
+        while (nodo != null) {
+            if (nodo.intervallo.siSovrappone(inizio, fine)) {
+                return true;
+            }
+            nodo = nodo.sinistro != null && nodo.sinistro.fineMassima.isAfter(inizio) ? nodo.sinistro : nodo.destro;
+        }
+        return false;
+    }
+
+    // Aggiunge a risultato gli intervalli che si sovrappongono a [inizio, fine), ordinati per inizio
+    void sovrapposizioni(LocalDateTime inizio, LocalDateTime fine, List<IntervalloPrenotazione> risultato) {
+        sovrapposizioni(radice, inizio, fine, risultato);
+    }
+
+    // Primo inizio strettamente successivo a momento (null se non ce ne sono)
+    LocalDateTime prossimoInizio(LocalDateTime momento) {
+        LocalDateTime prossimo = null;
+        Nodo nodo = radice;
+        while (nodo != null) {
+            if (nodo.intervallo.inizio().isAfter(momento)) {
+                prossimo = nodo.intervallo.inizio();
+                nodo = nodo.sinistro;
+            } else {
+                nodo = nodo.destro;
+            }
+        }
+        return prossimo;
+    }
+
+    private static Nodo aggiungi(Nodo nodo, Nodo nuovo) {
+        if (nodo == null) {
+            return nuovo;
+        }
+        if (ORDINE.compare(nuovo.intervallo, nodo.intervallo) < 0) {
+            nodo.sinistro = aggiungi(nodo.sinistro, nuovo);
+            if (nodo.sinistro.priorita > nodo.priorita) {
+                nodo = ruotaADestra(nodo);
+            }
+        } else {
+            nodo.destro = aggiungi(nodo.destro, nuovo);
+            if (nodo.destro.priorita > nodo.priorita) {
+                nodo = ruotaASinistra(nodo);
+            }
+        }
+        nodo.aggiornaFineMassima();
+        return nodo;
+    }
+
+    private static Nodo rimuovi(Nodo nodo, IntervalloPrenotazione intervallo) {
+        if (nodo == null) {
+            return null;
+        }
+        int confronto = ORDINE.compare(intervallo, nodo.intervallo);
+        if (confronto < 0) {
+            nodo.sinistro = rimuovi(nodo.sinistro, intervallo);
+        } else if (confronto > 0) {
+            nodo.destro = rimuovi(nodo.destro, intervallo);
+        } else if (nodo.sinistro == null) {
+            return nodo.destro;
+        } else if (nodo.destro == null) {
+            return nodo.sinistro;
+        } else if (nodo.sinistro.priorita > nodo.destro.priorita) {
+            // Il nodo scende verso la foglia dal lato del figlio con priorità minore
+            nodo = ruotaADestra(nodo);
+            nodo.destro = rimuovi(nodo.destro, intervallo);
+        } else {
+            nodo = ruotaASinistra(nodo);
+            nodo.sinistro = rimuovi(nodo.sinistro, intervallo);
+        }
+        nodo.aggiornaFineMassima();
+        return nodo;
+    }
+
+    private static void sovrapposizioni(Nodo nodo, LocalDateTime inizio, LocalDateTime fine,
+                                        List<IntervalloPrenotazione> risultato) {
+        if (nodo == null || !nodo.fineMassima.isAfter(inizio)) {
+            return; // Tutto il sottoalbero finisce entro inizio
+        }
+        sovrapposizioni(nodo.sinistro, inizio, fine, risultato);
+        if (!nodo.intervallo.inizio().isBefore(fine)) {
+            return; // Questo nodo e il sottoalbero destro iniziano dopo fine
+        }
+        if (nodo.intervallo.fine().isAfter(inizio)) {
+            risultato.add(nodo.intervallo);
+        }
+        sovrapposizioni(nodo.destro, inizio, fine, risultato);
+    }
+
+    private static Nodo ruotaADestra(Nodo nodo) {
+        Nodo sinistro = nodo.sinistro;
+        nodo.sinistro = sinistro.destro;
+        sinistro.destro = nodo;
+        nodo.aggiornaFineMassima();
+        sinistro.aggiornaFineMassima();
+        return sinistro;
+    }
+
+    private static Nodo ruotaASinistra(Nodo nodo) {
+        Nodo destro = nodo.destro;
+        nodo.destro = destro.sinistro;
+        destro.sinistro = nodo;
+        nodo.aggiornaFineMassima();
+        destro.aggiornaFineMassima();
+        return destro;
+    }
+}
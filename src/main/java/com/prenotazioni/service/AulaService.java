@@ -4,34 +4,98 @@ import com.prenotazioni.model.Aula;
 import com.prenotazioni.model.Prenotazione;
 import com.prenotazioni.repository.AulaRepository;
 import com.prenotazioni.repository.PrenotazioneRepository;
+import com.prenotazioni.repository.VersioniRepository;
 import com.prenotazioni.dto.AulaRequest;
+import com.prenotazioni.dto.FinestraTemporale;
 import com.prenotazioni.dto.RoomDetailsResponse;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.ArrayList;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
+// Le letture del catalogo delle aule (elenchi, filtri per piano, capienza e tipo, conteggi) sono servite da
+// un'istantanea immutabile in memoria, senza lock né query. Creazioni, modifiche ed eliminazioni costruiscono
+// una nuova istantanea e la sostituiscono in un colpo solo (copy-on-write); le modifiche fatte da altre
+// istanze arrivano con il controllo periodico della versione (controllaCatalogo). La versione
+// dell'istantanea è la versione AULE del database (VersioniRepository) da cui è stata costruita.
 @Service
 public class AulaService {
 
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
     @Autowired
     private AulaRepository aulaRepository;
 
     @Autowired
     private PrenotazioneRepository prenotazioneRepository;
 
+    @Autowired
+    private VersioniRepository versioniRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private volatile Catalogo catalogo = Catalogo.di(0, Collections.emptyList());
+
+    @PostConstruct
+    public void caricaCatalogo() {
+        catalogo = leggiCatalogo();
+        System.out.println("🏫 Catalogo aule caricato: " + catalogo.tutte().size() + " aule");
+    }
+
+    // Le aule modificate da altre istanze arrivano con un controllo periodico proprio, separato dal
+    // riallineamento dell'indice delle disponibilità: legge solo la versione AULE (una riga) e rilegge
+    // il catalogo solo quando è cambiata, quindi può essere frequente
+    @Scheduled(fixedDelayString = "${prenotazioni.catalogo.controllo-ms:5000}",
+               initialDelayString = "${prenotazioni.catalogo.controllo-ms:5000}")
+    public void controllaCatalogo() {
+        if (versioniRepository.leggi(VersioniRepository.AULE) != catalogo.versione()) {
+            ricaricaCatalogo();
+        }
+    }
+
+    // Rilegge il catalogo dal database (non dalla cache); l'istantanea viene sostituita solo se versione
+    // o contenuto sono cambiati
+    public synchronized void ricaricaCatalogo() {
+        Catalogo attuale = catalogo;
+        Catalogo riletto = leggiCatalogo();
+        if (riletto.versione() != attuale.versione() || !Catalogo.stesseAule(attuale.tutte(), riletto.tutte())) {
+            catalogo = riletto;
+            System.out.println("🏫 Catalogo aule riletto: versione " + riletto.versione());
+        }
+    }
+
+    // Versione del catalogo attuale (versione AULE del database)
+    public long getVersioneCatalogo() {
+        return catalogo.versione();
+    }
+
     // Ottieni tutte le aule
     public List<Aula> getAllAule() {
-        return aulaRepository.findAll();
+        return catalogo.tutte();
     }
 
-    // Ottieni una singola aula per ID
+    // Ottieni una singola aula per ID (copia in sola lettura: per modificarla usare updateAula)
     public Optional<Aula> getAulaById(Long id) {
-        return aulaRepository.findById(id);
+        return Optional.ofNullable(catalogo.perId().get(id));
     }
 
     // Crea una nuova aula
@@ -74,8 +138,11 @@ public class AulaService {
         System.out.println("   Piano: " + aula.getPiano());
         System.out.println("   isVirtual: " + aula.isVirtual());
 
-        Aula savedAula = aulaRepository.save(aula);
+        Scrittura scrittura = transactionTemplate.execute(status ->
+            new Scrittura(aulaRepository.save(aula), versioniRepository.incrementa(VersioniRepository.AULE)));
+        Aula savedAula = scrittura.aula();
         System.out.println("💾 Aula salvata con ID: " + savedAula.getId());
+        sostituisciNelCatalogo(scrittura.versione(), savedAula.getId(), savedAula);
         
         return savedAula;
     }
@@ -133,8 +200,11 @@ public class AulaService {
         System.out.println("   Piano: " + aula.getPiano());
         System.out.println("   isVirtual: " + aula.isVirtual());
 
-        Aula savedAula = aulaRepository.save(aula);
+        Scrittura scrittura = transactionTemplate.execute(status ->
+            new Scrittura(aulaRepository.save(aula), versioniRepository.incrementa(VersioniRepository.AULE)));
+        Aula savedAula = scrittura.aula();
         System.out.println("💾 Aula aggiornata con ID: " + savedAula.getId());
+        sostituisciNelCatalogo(scrittura.versione(), savedAula.getId(), savedAula);
         
         return savedAula;
     }
@@ -147,7 +217,11 @@ public class AulaService {
         }
 
         try {
-            aulaRepository.deleteById(id);
+            long versione = transactionTemplate.execute(status -> {
+                aulaRepository.deleteById(id);
+                return versioniRepository.incrementa(VersioniRepository.AULE);
+            });
+            sostituisciNelCatalogo(versione, id, null);
             return true;
         } catch (Exception e) {
             return false; // Errore durante l'eliminazione
@@ -161,133 +235,251 @@ public class AulaService {
     
     // Filtra aule per piano
     public List<Aula> getAuleByPiano(int piano) {
-        return aulaRepository.findByPiano(piano);
+        return catalogo.perPiano().getOrDefault(piano, Collections.emptyList());
     }
     
-    // Filtra aule per capienza minima
+    // Filtra aule per capienza minima (ordinate per capienza)
     public List<Aula> getAuleByCapienzaMinima(int minCapienza) {
-        return aulaRepository.findByCapienzaGreaterThanEqual(minCapienza);
+        return catalogo.tra(minCapienza, Integer.MAX_VALUE);
     }
 
     // Ottieni i dettagli completi di tutte le aule con informazioni di stato e prenotazioni
-    public List<RoomDetailsResponse> getAllRoomsWithDetails() {
-        List<Aula> aule = aulaRepository.findAll();
-        List<RoomDetailsResponse> response = new ArrayList<>();
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
+    public List<RoomDetailsResponse> getAllRoomsWithDetails(FinestraTemporale finestra) {
+        return getRoomsDetailsFromList(catalogo.tutte(), finestra);
+    }
+
+    // Ottieni i dettagli completi di una singola aula
+    public RoomDetailsResponse getRoomWithDetails(Long aulaId, FinestraTemporale finestra) {
+        Optional<Aula> aulaOpt = getAulaById(aulaId);
+        if (aulaOpt.isEmpty()) {
+            return null;
+        }
         
-        for (Aula aula : aule) {
-            RoomDetailsResponse roomDetails = new RoomDetailsResponse(aula.getId(), aula.getNome(), aula.getPiano(), aula.getCapienza(), aula.isVirtual());
-            
-            // Ottieni tutte le prenotazioni per questa aula
-            List<Prenotazione> prenotazioni = prenotazioneRepository.findByAulaId(aula.getId());
-            
-            // Determina lo stato dell'aula
-            String status = "libera";
-            RoomDetailsResponse.CurrentBooking currentBooking = null;
-            RoomDetailsResponse.BlockInfo blockInfo = null;
-            
-            LocalDateTime now = LocalDateTime.now();
-            
-            // Controllo se l'aula è attualmente occupata o bloccata
-            for (Prenotazione prenotazione : prenotazioni) {
-                if (prenotazione.getInizio().isBefore(now) && prenotazione.getFine().isAfter(now)) {
-                    if (prenotazione.getStato() == Prenotazione.StatoPrenotazione.PRENOTATA) {
-                        status = "prenotata";
-                        currentBooking = new RoomDetailsResponse.CurrentBooking(
-                            prenotazione.getUtente().getNome(),
-                            prenotazione.getInizio().toLocalDate().format(dateFormatter),
-                            prenotazione.getInizio().format(timeFormatter) + "-" + prenotazione.getFine().format(timeFormatter),
-                            prenotazione.getDescrizione() != null ? prenotazione.getDescrizione() : "Lezione"
-                        );
-                    } else if (prenotazione.getStato() == Prenotazione.StatoPrenotazione.BLOCCATA || 
-                              prenotazione.getStato() == Prenotazione.StatoPrenotazione.MANUTENZIONE) {
-                        status = "bloccata";
-                        blockInfo = new RoomDetailsResponse.BlockInfo(
-                            prenotazione.getDescrizione() != null ? prenotazione.getDescrizione() : "Aula bloccata",
-                            "admin",
-                            prenotazione.getDataCreazione().toLocalDate().format(dateFormatter)
-                        );
-                    }
-                    break;
-                }
+        return getRoomsDetailsFromList(List.of(aulaOpt.get()), finestra).get(0);
+    }
+    
+    // Metodi per gestire aule fisiche e virtuali
+    
+    // Ottieni tutte le aule fisiche
+    public List<Aula> getPhysicalRooms() {
+        return catalogo.fisiche();
+    }
+    
+    // Ottieni tutte le aule virtuali
+    public List<Aula> getVirtualRooms() {
+        return catalogo.virtuali();
+    }
+    
+    // Ottieni aule fisiche ordinate per piano e nome
+    public List<Aula> getPhysicalRoomsOrdered() {
+        return catalogo.fisichePerPianoENome();
+    }
+    
+    // Ottieni aule virtuali ordinate per nome
+    public List<Aula> getVirtualRoomsOrdered() {
+        return catalogo.virtualiPerNome();
+    }
+    
+    // Ottieni i dettagli delle aule fisiche
+    public List<RoomDetailsResponse> getPhysicalRoomsWithDetails(FinestraTemporale finestra) {
+        return getRoomsDetailsFromList(catalogo.fisiche(), finestra);
+    }
+    
+    // Ottieni i dettagli delle aule virtuali
+    public List<RoomDetailsResponse> getVirtualRoomsWithDetails(FinestraTemporale finestra) {
+        return getRoomsDetailsFromList(catalogo.virtuali(), finestra);
+    }
+    
+    // Conta aule fisiche
+    public long countPhysicalRooms() {
+        return catalogo.fisiche().size();
+    }
+    
+    // Conta aule virtuali  
+    public long countVirtualRooms() {
+        return catalogo.virtuali().size();
+    }
+    
+    // Versione AULE e aule lette nella stessa transazione (su InnoDB dalla stessa istantanea consistente)
+    private Catalogo leggiCatalogo() {
+        return transactionTemplate.execute(status -> Catalogo.di(versioniRepository.leggi(VersioniRepository.AULE),
+            aulaRepository.findAllOrderByPianoAndNomeDalDatabase()));
+    }
+
+    // Aula salvata e versione AULE assegnata dalla stessa transazione
+    private record Scrittura(Aula aula, long versione) {}
+
+    // Nuova istantanea con l'aula aggiunta, sostituita o (aula null) rimossa, dopo il commit della modifica
+    // con la versione indicata. I writer sono serializzati, i lettori continuano a usare l'istantanea
+    // precedente finché non viene pubblicata la nuova. Se nel frattempo altre istanze hanno modificato le
+    // aule (versione non consecutiva) il catalogo viene riletto per intero
+    private synchronized void sostituisciNelCatalogo(long versione, Long id, Aula aula) {
+        Catalogo attuale = catalogo;
+        if (versione <= attuale.versione()) {
+            return; // Già inclusa da una rilettura
+        }
+        if (versione != attuale.versione() + 1) {
+            ricaricaCatalogo();
+            return;
+        }
+        List<Aula> aule = new ArrayList<>(attuale.tutte().size() + 1);
+        for (Aula esistente : attuale.tutte()) {
+            if (!esistente.getId().equals(id)) {
+                aule.add(esistente);
             }
+        }
+        if (aula != null) {
+            aule.add(aula);
+        }
+        catalogo = Catalogo.di(versione, aule);
+    }
+    
+    // Istantanea immutabile del catalogo con gli indici usati dalle letture. Le aule sono copie staccate
+    // dal contesto di persistenza, così nessuna modifica a un'entità caricata altrove può alterarle.
+    private record Catalogo(
+        long versione,
+        List<Aula> tutte,                              // per id
+        Map<Long, Aula> perId,
+        Map<Integer, List<Aula>> perPiano,             // per id
+        NavigableMap<Integer, List<Aula>> perCapienza, // per capienza, poi id
+        List<Aula> fisiche,                            // per id
+        List<Aula> virtuali,                           // per id
+        List<Aula> fisichePerPianoENome,
+        List<Aula> virtualiPerNome
+    ) {
+        private static final Comparator<Aula> PER_NOME = Comparator.comparing(Aula::getNome,
+            Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER));
+        
+        static Catalogo di(long versione, Collection<Aula> aule) {
+            List<Aula> tutte = aule.stream()
+                .map(Catalogo::copia)
+                .sorted(Comparator.comparing(Aula::getId))
+                .collect(Collectors.toUnmodifiableList());
             
-            // Se non è attualmente occupata, controlla se ci sono prenotazioni future nelle prossime 2 ore
-            if (status.equals("libera")) {
-                LocalDateTime twoHoursLater = now.plusHours(2);
-                for (Prenotazione prenotazione : prenotazioni) {
-                    if (prenotazione.getInizio().isAfter(now) && prenotazione.getInizio().isBefore(twoHoursLater) &&
-                        prenotazione.getStato() == Prenotazione.StatoPrenotazione.PRENOTATA) {
-                        status = "prenotata";
-                        currentBooking = new RoomDetailsResponse.CurrentBooking(
-                            prenotazione.getUtente().getNome(),
-                            prenotazione.getInizio().toLocalDate().format(dateFormatter),
-                            prenotazione.getInizio().format(timeFormatter) + "-" + prenotazione.getFine().format(timeFormatter),
-                            prenotazione.getDescrizione() != null ? prenotazione.getDescrizione() : "Lezione"
-                        );
-                        break;
-                    }
-                }
+            Map<Long, Aula> perId = new HashMap<>();
+            Map<Integer, List<Aula>> perPiano = new HashMap<>();
+            NavigableMap<Integer, List<Aula>> perCapienza = new TreeMap<>();
+            for (Aula aula : tutte) {
+                perId.put(aula.getId(), aula);
+                perPiano.computeIfAbsent(aula.getPiano(), piano -> new ArrayList<>()).add(aula);
+                perCapienza.computeIfAbsent(aula.getCapienza(), capienza -> new ArrayList<>()).add(aula);
             }
+            perPiano.replaceAll((piano, lista) -> List.copyOf(lista));
+            perCapienza.replaceAll((capienza, lista) -> List.copyOf(lista));
             
-            // Crea la lista delle prenotazioni
-            List<RoomDetailsResponse.BookingInfo> bookingInfos = new ArrayList<>();
-            for (Prenotazione prenotazione : prenotazioni) {
-                if (prenotazione.getStato() == Prenotazione.StatoPrenotazione.PRENOTATA) {
-                    bookingInfos.add(new RoomDetailsResponse.BookingInfo(
-                        prenotazione.getInizio().toLocalDate().format(dateFormatter),
-                        prenotazione.getInizio().format(timeFormatter),
-                        prenotazione.getFine().format(timeFormatter),
-                        prenotazione.getUtente().getNome(),
-                        prenotazione.getDescrizione() != null ? prenotazione.getDescrizione() : "Lezione"
-                    ));
+            List<Aula> fisiche = filtra(tutte, aula -> !aula.isVirtual());
+            List<Aula> virtuali = filtra(tutte, Aula::isVirtual);
+            return new Catalogo(
+                versione,
+                tutte,
+                Collections.unmodifiableMap(perId),
+                Collections.unmodifiableMap(perPiano),
+                Collections.unmodifiableNavigableMap(perCapienza),
+                fisiche,
+                virtuali,
+                fisiche.stream().sorted(Comparator.comparingInt(Aula::getPiano).thenComparing(PER_NOME)).toList(),
+                virtuali.stream().sorted(PER_NOME).toList()
+            );
+        }
+        
+        // Aule con capienza tra min e max (inclusi)
+        List<Aula> tra(int min, int max) {
+            List<Aula> risultato = new ArrayList<>();
+            for (List<Aula> aule : perCapienza.subMap(min, true, max, true).values()) {
+                risultato.addAll(aule);
+            }
+            return Collections.unmodifiableList(risultato);
+        }
+        
+        static boolean stesseAule(List<Aula> prime, List<Aula> seconde) {
+            if (prime.size() != seconde.size()) {
+                return false;
+            }
+            for (int i = 0; i < prime.size(); i++) {
+                Aula a = prime.get(i);
+                Aula b = seconde.get(i);
+                if (!a.getId().equals(b.getId()) || !Objects.equals(a.getNome(), b.getNome()) || a.getCapienza() != b.getCapienza()
+                        || a.getPiano() != b.getPiano() || a.isVirtual() != b.isVirtual()) {
+                    return false;
                 }
             }
-            
-            roomDetails.setStatus(status);
-            roomDetails.setBooking(currentBooking);
-            roomDetails.setBlocked(blockInfo);
-            roomDetails.setBookings(bookingInfos);
-            
-            response.add(roomDetails);
+            return true;
         }
         
-        return response;
+        private static List<Aula> filtra(List<Aula> aule, Predicate<Aula> filtro) {
+            return aule.stream().filter(filtro).toList();
+        }
+        
+        private static Aula copia(Aula aula) {
+            Aula copia = new Aula();
+            copia.setId(aula.getId());
+            copia.setNome(aula.getNome());
+            copia.setCapienza(aula.getCapienza());
+            copia.setPiano(aula.getPiano());
+            copia.setVirtual(aula.isVirtual());
+            return copia;
+        }
     }
-
-    // Ottieni i dettagli completi di una singola aula
-    public RoomDetailsResponse getRoomWithDetails(Long aulaId) {
-        Optional<Aula> aulaOpt = aulaRepository.findById(aulaId);
-        if (aulaOpt.isEmpty()) {
-            return null;
+    
+    // Metodo di utilità privato per evitare duplicazione del codice.
+    // Con due query per l'intero insieme di aule: le prenotazioni attive ora o nelle prossime 2 ore
+    // (per lo stato) e le prenotazioni della finestra richiesta, limitate per aula dal database.
+    private List<RoomDetailsResponse> getRoomsDetailsFromList(List<Aula> aule, FinestraTemporale finestra) {
+        List<RoomDetailsResponse> response = new ArrayList<>();
+        if (aule.isEmpty()) {
+            return response;
         }
         
-        Aula aula = aulaOpt.get();
-        RoomDetailsResponse roomDetails = new RoomDetailsResponse(aula.getId(), aula.getNome(), aula.getPiano(), aula.getCapienza(), aula.isVirtual());
+        List<Long> aulaIds = new ArrayList<>();
+        for (Aula aula : aule) {
+            aulaIds.add(aula.getId());
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, List<Prenotazione>> attivePerAula = raggruppaPerAula(
+            prenotazioneRepository.findAttiveByAulaIdInAndPeriodo(aulaIds, now, now.plusHours(2)));
+        Map<Long, List<Prenotazione>> prenotatePerAula = raggruppaPerAula(
+            prenotazioneRepository.findPrenotateByAulaIdInAndPeriodo(aulaIds, finestra.from(), finestra.to(), finestra.limit()));
         
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
+        for (Aula aula : aule) {
+            response.add(creaRoomDetails(
+                aula,
+                attivePerAula.getOrDefault(aula.getId(), Collections.emptyList()),
+                prenotatePerAula.getOrDefault(aula.getId(), Collections.emptyList()),
+                now
+            ));
+        }
         
-        // Ottieni tutte le prenotazioni per questa aula
-        List<Prenotazione> prenotazioni = prenotazioneRepository.findByAulaId(aula.getId());
+        return response;
+    }
+    
+    private Map<Long, List<Prenotazione>> raggruppaPerAula(List<Prenotazione> prenotazioni) {
+        Map<Long, List<Prenotazione>> perAula = new HashMap<>();
+        for (Prenotazione prenotazione : prenotazioni) {
+            perAula.computeIfAbsent(prenotazione.getAula().getId(), id -> new ArrayList<>()).add(prenotazione);
+        }
+        return perAula;
+    }
+    
+    // Costruisce i dettagli di un'aula: lo stato dalle prenotazioni attive ora o nelle prossime 2 ore,
+    // la lista dalle prenotazioni della finestra richiesta (entrambe ordinate per inizio)
+    private RoomDetailsResponse creaRoomDetails(Aula aula, List<Prenotazione> attive, List<Prenotazione> prenotate, LocalDateTime now) {
+        RoomDetailsResponse roomDetails = new RoomDetailsResponse(aula.getId(), aula.getNome(), aula.getPiano(), aula.getCapienza(), aula.isVirtual());
         
         // Determina lo stato dell'aula
         String status = "libera";
         RoomDetailsResponse.CurrentBooking currentBooking = null;
         RoomDetailsResponse.BlockInfo blockInfo = null;
         
-        LocalDateTime now = LocalDateTime.now();
-        
         // Controllo se l'aula è attualmente occupata o bloccata
-        for (Prenotazione prenotazione : prenotazioni) {
+        for (Prenotazione prenotazione : attive) {
             if (prenotazione.getInizio().isBefore(now) && prenotazione.getFine().isAfter(now)) {
                 if (prenotazione.getStato() == Prenotazione.StatoPrenotazione.PRENOTATA) {
                     status = "prenotata";
                     currentBooking = new RoomDetailsResponse.CurrentBooking(
                         prenotazione.getUtente().getNome(),
-                        prenotazione.getInizio().toLocalDate().format(dateFormatter),
-                        prenotazione.getInizio().format(timeFormatter) + "-" + prenotazione.getFine().format(timeFormatter),
+                        prenotazione.getInizio().toLocalDate().format(DATE_FORMATTER),
+                        prenotazione.getInizio().format(TIME_FORMATTER) + "-" + prenotazione.getFine().format(TIME_FORMATTER),
                         prenotazione.getDescrizione() != null ? prenotazione.getDescrizione() : "Lezione"
                     );
                 } else if (prenotazione.getStato() == Prenotazione.StatoPrenotazione.BLOCCATA || 
@@ -296,7 +488,7 @@ public class AulaService {
                     blockInfo = new RoomDetailsResponse.BlockInfo(
                         prenotazione.getDescrizione() != null ? prenotazione.getDescrizione() : "Aula bloccata",
                         "admin",
-                        prenotazione.getDataCreazione().toLocalDate().format(dateFormatter)
+                        prenotazione.getDataCreazione().toLocalDate().format(DATE_FORMATTER)
                     );
                 }
                 break;
@@ -306,14 +498,14 @@ public class AulaService {
         // Se non è attualmente occupata, controlla se ci sono prenotazioni future nelle prossime 2 ore
         if (status.equals("libera")) {
             LocalDateTime twoHoursLater = now.plusHours(2);
-            for (Prenotazione prenotazione : prenotazioni) {
+            for (Prenotazione prenotazione : attive) {
                 if (prenotazione.getInizio().isAfter(now) && prenotazione.getInizio().isBefore(twoHoursLater) &&
                     prenotazione.getStato() == Prenotazione.StatoPrenotazione.PRENOTATA) {
                     status = "prenotata";
                     currentBooking = new RoomDetailsResponse.CurrentBooking(
                         prenotazione.getUtente().getNome(),
-                        prenotazione.getInizio().toLocalDate().format(dateFormatter),
-                        prenotazione.getInizio().format(timeFormatter) + "-" + prenotazione.getFine().format(timeFormatter),
+                        prenotazione.getInizio().toLocalDate().format(DATE_FORMATTER),
+                        prenotazione.getInizio().format(TIME_FORMATTER) + "-" + prenotazione.getFine().format(TIME_FORMATTER),
                         prenotazione.getDescrizione() != null ? prenotazione.getDescrizione() : "Lezione"
                     );
                     break;
@@ -323,12 +515,12 @@ public class AulaService {
         
         // Crea la lista delle prenotazioni
         List<RoomDetailsResponse.BookingInfo> bookingInfos = new ArrayList<>();
-        for (Prenotazione prenotazione : prenotazioni) {
+        for (Prenotazione prenotazione : prenotate) {
             if (prenotazione.getStato() == Prenotazione.StatoPrenotazione.PRENOTATA) {
                 bookingInfos.add(new RoomDetailsResponse.BookingInfo(
-                    prenotazione.getInizio().toLocalDate().format(dateFormatter),
-                    prenotazione.getInizio().format(timeFormatter),
-                    prenotazione.getFine().format(timeFormatter),
+                    prenotazione.getInizio().toLocalDate().format(DATE_FORMATTER),
+                    prenotazione.getInizio().format(TIME_FORMATTER),
+                    prenotazione.getFine().format(TIME_FORMATTER),
                     prenotazione.getUtente().getNome(),
                     prenotazione.getDescrizione() != null ? prenotazione.getDescrizione() : "Lezione"
                 ));
@@ -342,134 +534,4 @@ public class AulaService {
         
         return roomDetails;
     }
-    
-    // Metodi per gestire aule fisiche e virtuali
-    
-    // Ottieni tutte le aule fisiche
-    public List<Aula> getPhysicalRooms() {
-        return aulaRepository.findByIsVirtual(false);
-    }
-    
-    // Ottieni tutte le aule virtuali
-    public List<Aula> getVirtualRooms() {
-        return aulaRepository.findByIsVirtual(true);
-    }
-    
-    // Ottieni aule fisiche ordinate per piano e nome
-    public List<Aula> getPhysicalRoomsOrdered() {
-        return aulaRepository.findPhysicalRoomsOrderByPianoAndNome();
-    }
-    
-    // Ottieni aule virtuali ordinate per nome
-    public List<Aula> getVirtualRoomsOrdered() {
-        return aulaRepository.findVirtualRoomsOrderByNome();
-    }
-    
-    // Ottieni i dettagli delle aule fisiche
-    public List<RoomDetailsResponse> getPhysicalRoomsWithDetails() {
-        List<Aula> aule = aulaRepository.findByIsVirtual(false);
-        return getRoomsDetailsFromList(aule);
-    }
-    
-    // Ottieni i dettagli delle aule virtuali
-    public List<RoomDetailsResponse> getVirtualRoomsWithDetails() {
-        List<Aula> aule = aulaRepository.findByIsVirtual(true);
-        return getRoomsDetailsFromList(aule);
-    }
-    
-    // Conta aule fisiche
-    public long countPhysicalRooms() {
-        return aulaRepository.countByIsVirtual(false);
-    }
-    
-    // Conta aule virtuali  
-    public long countVirtualRooms() {
-        return aulaRepository.countByIsVirtual(true);
-    }
-    
-    // Metodo di utilità privato per evitare duplicazione del codice
-    private List<RoomDetailsResponse> getRoomsDetailsFromList(List<Aula> aule) {
-        List<RoomDetailsResponse> response = new ArrayList<>();
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
-        
-        for (Aula aula : aule) {
-            RoomDetailsResponse roomDetails = new RoomDetailsResponse(aula.getId(), aula.getNome(), aula.getPiano(), aula.getCapienza(), aula.isVirtual());
-            
-            // Ottieni tutte le prenotazioni per questa aula
-            List<Prenotazione> prenotazioni = prenotazioneRepository.findByAulaId(aula.getId());
-            
-            // Determina lo stato dell'aula
-            String status = "libera";
-            RoomDetailsResponse.CurrentBooking currentBooking = null;
-            RoomDetailsResponse.BlockInfo blockInfo = null;
-            
-            LocalDateTime now = LocalDateTime.now();
-            
-            // Controllo se l'aula è attualmente occupata o bloccata
-            for (Prenotazione prenotazione : prenotazioni) {
-                if (prenotazione.getInizio().isBefore(now) && prenotazione.getFine().isAfter(now)) {
-                    if (prenotazione.getStato() == Prenotazione.StatoPrenotazione.PRENOTATA) {
-                        status = "prenotata";
-                        currentBooking = new RoomDetailsResponse.CurrentBooking(
-                            prenotazione.getUtente().getNome(),
-                            prenotazione.getInizio().toLocalDate().format(dateFormatter),
-                            prenotazione.getInizio().format(timeFormatter) + "-" + prenotazione.getFine().format(timeFormatter),
-                            prenotazione.getDescrizione() != null ? prenotazione.getDescrizione() : "Lezione"
-                        );
-                    } else if (prenotazione.getStato() == Prenotazione.StatoPrenotazione.BLOCCATA || 
-                              prenotazione.getStato() == Prenotazione.StatoPrenotazione.MANUTENZIONE) {
-                        status = "bloccata";
-                        blockInfo = new RoomDetailsResponse.BlockInfo(
-                            prenotazione.getDescrizione() != null ? prenotazione.getDescrizione() : "Aula bloccata",
-                            "admin",
-                            prenotazione.getDataCreazione().toLocalDate().format(dateFormatter)
-                        );
-                    }
-                    break;
-                }
-            }
-            
-            // Se non è attualmente occupata, controlla se ci sono prenotazioni future nelle prossime 2 ore
-            if (status.equals("libera")) {
-                LocalDateTime twoHoursLater = now.plusHours(2);
-                for (Prenotazione prenotazione : prenotazioni) {
-                    if (prenotazione.getInizio().isAfter(now) && prenotazione.getInizio().isBefore(twoHoursLater) &&
-                        prenotazione.getStato() == Prenotazione.StatoPrenotazione.PRENOTATA) {
-                        status = "prenotata";
-                        currentBooking = new RoomDetailsResponse.CurrentBooking(
-                            prenotazione.getUtente().getNome(),
-                            prenotazione.getInizio().toLocalDate().format(dateFormatter),
-                            prenotazione.getInizio().format(timeFormatter) + "-" + prenotazione.getFine().format(timeFormatter),
-                            prenotazione.getDescrizione() != null ? prenotazione.getDescrizione() : "Lezione"
-                        );
-                        break;
-                    }
-                }
-            }
-            
-            // Crea la lista delle prenotazioni
-            List<RoomDetailsResponse.BookingInfo> bookingInfos = new ArrayList<>();
-            for (Prenotazione prenotazione : prenotazioni) {
-                if (prenotazione.getStato() == Prenotazione.StatoPrenotazione.PRENOTATA) {
-                    bookingInfos.add(new RoomDetailsResponse.BookingInfo(
-                        prenotazione.getInizio().toLocalDate().format(dateFormatter),
-                        prenotazione.getInizio().format(timeFormatter),
-                        prenotazione.getFine().format(timeFormatter),
-                        prenotazione.getUtente().getNome(),
-                        prenotazione.getDescrizione() != null ? prenotazione.getDescrizione() : "Lezione"
-                    ));
-                }
-            }
-            
-            roomDetails.setStatus(status);
-            roomDetails.setBooking(currentBooking);
-            roomDetails.setBlocked(blockInfo);
-            roomDetails.setBookings(bookingInfos);
-            
-            response.add(roomDetails);
-        }
-        
-        return response;
-    }
 }
@@ -2,6 +2,7 @@ package com.prenotazioni.service;
 
 import com.prenotazioni.model.Utente;
 import com.prenotazioni.repository.UtenteRepository;
+import com.prenotazioni.repository.VersioniRepository;
 import com.prenotazioni.dto.RegisterRequest;
 
 import java.util.List;
@@ -9,22 +10,32 @@ import java.time.LocalDateTime;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class AuthService {
     @Autowired
     private UtenteRepository utenteRepository;
 
+    // Versioni per gli ETag, incrementate nella transazione della modifica: UTENTI a ogni modifica salvata
+    // di un utente (anche l'ultimo accesso), ANAGRAFICA solo quando cambiano i dati anagrafici (username,
+    // nome...), non a ogni login
+    @Autowired
+    private VersioniRepository versioniRepository;
+
+    @Transactional
     public Utente login(String email, String password) {
         Utente utente = utenteRepository.findByEmailAndPassword(email, password);
         if (utente != null) {
             // Aggiorna l'ultimo accesso
             utente.setUltimoAccesso(LocalDateTime.now());
             utenteRepository.save(utente);
+            versioniRepository.incrementa(VersioniRepository.UTENTI);
         }
         return utente;
     }
 
+    @Transactional
     public Utente register(RegisterRequest request) {
         if (utenteRepository.findByEmail(request.getEmail()) != null) return null;
         if (utenteRepository.findByUsername(request.getUsername()) != null) return null;
@@ -39,21 +50,28 @@ public class AuthService {
         // Imposta la data di registrazione (non modificabile)
         utente.setDataRegistrazione(LocalDateTime.now());
 
-        return utenteRepository.save(utente);
+        Utente salvato = utenteRepository.save(utente);
+        versioniRepository.incrementa(VersioniRepository.ANAGRAFICA);
+        versioniRepository.incrementa(VersioniRepository.UTENTI);
+        return salvato;
     }
 
     public List<Utente> getAllUsers() {
         return utenteRepository.findAll();
     }
 
+    @Transactional
     public boolean deleteUtente(Long id) {
         if (!utenteRepository.existsById(id)) {
             return false;
         }
         utenteRepository.deleteById(id);
+        versioniRepository.incrementa(VersioniRepository.ANAGRAFICA);
+        versioniRepository.incrementa(VersioniRepository.UTENTI);
         return true;
     }
 
+    @Transactional
     public Utente updateUtente(Long id, RegisterRequest request) {
         Utente utente = utenteRepository.findById(id).orElse(null);
         if (utente == null) {
@@ -69,6 +87,9 @@ public class AuthService {
         // NON modifichiamo dataRegistrazione - rimane quella originale
         // ultimoAccesso viene aggiornato solo al login
 
-        return utenteRepository.save(utente);
+        Utente salvato = utenteRepository.save(utente);
+        versioniRepository.incrementa(VersioniRepository.ANAGRAFICA);
+        versioniRepository.incrementa(VersioniRepository.UTENTI);
+        return salvato;
     }
 }
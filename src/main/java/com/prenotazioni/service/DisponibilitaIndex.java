@@ -0,0 +1,205 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.dto.IntervalloPrenotazione;
+import com.prenotazioni.model.Prenotazione;
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+import com.prenotazioni.repository.PrenotazioneRepository;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Indice in memoria delle prenotazioni attive (non annullate), una struttura per ogni aula.
+// Risponde alle verifiche di disponibilità senza andare sul database.
+// Ogni modifica viene notificata con un evento Modifica (aulaId null = tutte le aule) e incrementa la versione.
+@Service
+public class DisponibilitaIndex {
+
+    public record Modifica(Long aulaId) {}
+
+    @Autowired
+    private PrenotazioneRepository prenotazioneRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private final Map<Long, IndiceAula> indici = new ConcurrentHashMap<>();
+
+    // Incrementata dopo ogni prenotazione registrata o rimossa (già sul database) e dopo ogni riallineamento
+    // che ha trovato differenze
+    private final AtomicLong versione = new AtomicLong();
+
+    // Caricamento iniziale di tutte le prenotazioni attive
+    @PostConstruct
+    public void carica() {
+        List<IntervalloPrenotazione> intervalli = prenotazioneRepository.findIntervalliAttivi();
+        indici.clear();
+        for (IntervalloPrenotazione intervallo : intervalli) {
+            indici.computeIfAbsent(intervallo.aulaId(), id -> new IndiceAula()).aggiungi(intervallo);
+        }
+        System.out.println("📅 DisponibilitaIndex caricato: " + intervalli.size() + " prenotazioni attive");
+    }
+
+    // Con più istanze le prenotazioni create o annullate dagli altri nodi arrivano solo dal database:
+    // l'indice viene ricostruito periodicamente e sostituito aula per aula, senza svuotarlo nel frattempo.
+    // Le aule modificate da registra/rimuovi dopo l'inizio della lettura restano come sono: la lettura
+    // potrebbe non contenere quella modifica, e il riallineamento successivo le ricontrolla
+    @Scheduled(fixedDelayString = "${prenotazioni.indice.resync-ms:60000}",
+               initialDelayString = "${prenotazioni.indice.resync-ms:60000}")
+    public void riallinea() {
+        long versioneLettura = versione.get();
+        List<IntervalloPrenotazione> intervalli = prenotazioneRepository.findIntervalliAttivi();
+        Map<Long, IndiceAula> nuovi = new HashMap<>();
+        for (IntervalloPrenotazione intervallo : intervalli) {
+            nuovi.computeIfAbsent(intervallo.aulaId(), id -> new IndiceAula()).aggiungi(intervallo);
+        }
+        Set<Long> aule = new HashSet<>(indici.keySet());
+        aule.addAll(nuovi.keySet());
+        boolean cambiato = false;
+        for (Long aulaId : aule) {
+            cambiato |= sostituisci(aulaId, nuovi.get(aulaId), versioneLettura);
+        }
+        if (cambiato) {
+            versione.incrementAndGet();
+        }
+        eventPublisher.publishEvent(new Modifica(null));
+    }
+
+    // Sostituisce l'indice dell'aula (null = nessuna prenotazione attiva) se non è stato modificato dopo
+    // versioneLettura. Eseguito dentro compute, come registra e rimuovi: nessuna modifica può cadere tra
+    // il controllo e la sostituzione. Restituisce true se il contenuto è cambiato
+    private boolean sostituisci(Long aulaId, IndiceAula nuovo, long versioneLettura) {
+        AtomicBoolean cambiato = new AtomicBoolean();
+        indici.compute(aulaId, (id, attuale) -> {
+            if (attuale != null && attuale.modificatoAllaVersione > versioneLettura) {
+                return attuale;
+            }
+            boolean uguali = attuale == null || nuovo == null
+                ? (attuale == null || attuale.isVuoto()) && (nuovo == null || nuovo.isVuoto())
+                : attuale.stessiIntervalli(nuovo);
+            cambiato.set(!uguali);
+            return nuovo;
+        });
+        return cambiato.get();
+    }
+
+    // Registra una prenotazione appena salvata (prenotazione, blocco o manutenzione)
+    public void registra(Prenotazione prenotazione) {
+        if (prenotazione.getStato() == StatoPrenotazione.ANNULLATA) {
+            rimuovi(prenotazione);
+            return;
+        }
+        IntervalloPrenotazione intervallo = IntervalloPrenotazione.da(prenotazione);
+        modifica(prenotazione.getAula().getId(), indice -> indice.aggiungi(intervallo));
+    }
+
+    // Rimuove una prenotazione annullata
+    public void rimuovi(Prenotazione prenotazione) {
+        modifica(prenotazione.getAula().getId(), indice -> indice.rimuovi(prenotazione.getId()));
+    }
+
+    // Applica la modifica all'indice dell'aula e lo marca con la nuova versione (vedi riallinea)
+    private void modifica(Long aulaId, Consumer<IndiceAula> operazione) {
+        indici.compute(aulaId, (id, indice) -> {
+            IndiceAula aggiornato = indice != null ? indice : new IndiceAula();
+            operazione.accept(aggiornato);
+            aggiornato.modificatoAllaVersione = versione.incrementAndGet();
+            return aggiornato;
+        });
+        eventPublisher.publishEvent(new Modifica(aulaId));
+    }
+
+    public long getVersione() {
+        return versione.get();
+    }
+
+    // Verifica se l'aula è libera in [inizio, fine)
+    public boolean isLibera(Long aulaId, LocalDateTime inizio, LocalDateTime fine) {
+        if (inizio == null || fine == null || !fine.isAfter(inizio)) {
+            return false; // Intervallo non valido
+        }
+        IndiceAula indice = indici.get(aulaId);
+        return indice == null || !indice.haSovrapposizioni(inizio, fine);
+    }
+
+    // Prenotazioni attive dell'aula che si sovrappongono a [inizio, fine), ordinate per inizio
+    public List<IntervalloPrenotazione> getSovrapposizioni(Long aulaId, LocalDateTime inizio, LocalDateTime fine) {
+        IndiceAula indice = indici.get(aulaId);
+        if (indice == null || !fine.isAfter(inizio)) {
+            return Collections.emptyList();
+        }
+        return indice.sovrapposizioni(inizio, fine);
+    }
+
+    // Prenotazioni attive dell'aula nell'istante momento (inizio <= momento < fine)
+    public List<IntervalloPrenotazione> getAttive(Long aulaId, LocalDateTime momento) {
+        return getSovrapposizioni(aulaId, momento, momento.plusNanos(1));
+    }
+
+    // Inizio della prima prenotazione dell'aula successiva a momento (null se non ce ne sono)
+    public LocalDateTime getProssimoInizio(Long aulaId, LocalDateTime momento) {
+        IndiceAula indice = indici.get(aulaId);
+        return indice == null ? null : indice.prossimoInizio(momento);
+    }
+
+    // Prenotazioni di una singola aula: per id e in un albero di intervalli (AlberoIntervalli), così le
+    // verifiche costano O(log n) anche quando l'aula ha blocchi o manutenzioni molto lunghi
+    private static class IndiceAula {
+        private final AlberoIntervalli albero = new AlberoIntervalli();
+        private final Map<Long, IntervalloPrenotazione> perId = new HashMap<>();
+        // Versione dell'ultima modifica da registra/rimuovi (0 = costruito da una lettura del database);
+        // letta e scritta solo dentro indici.compute
+        private long modificatoAllaVersione;
+
+        synchronized void aggiungi(IntervalloPrenotazione intervallo) {
+            rimuovi(intervallo.id());
+            albero.aggiungi(intervallo);
+            perId.put(intervallo.id(), intervallo);
+        }
+
+        synchronized void rimuovi(Long prenotazioneId) {
+            IntervalloPrenotazione esistente = perId.remove(prenotazioneId);
+            if (esistente != null) {
+                albero.rimuovi(esistente);
+            }
+        }
+
+        // Stesse prenotazioni con gli stessi orari e stati (altro è un indice appena costruito, non condiviso)
+        synchronized boolean stessiIntervalli(IndiceAula altro) {
+            return perId.equals(altro.perId);
+        }
+
+        synchronized boolean isVuoto() {
+            return perId.isEmpty();
+        }
+
+        synchronized boolean haSovrapposizioni(LocalDateTime inizio, LocalDateTime fine) {
+            return albero.haSovrapposizioni(inizio, fine);
+        }
+
+        synchronized List<IntervalloPrenotazione> sovrapposizioni(LocalDateTime inizio, LocalDateTime fine) {
+            List<IntervalloPrenotazione> risultato = new ArrayList<>();
+            albero.sovrapposizioni(inizio, fine, risultato);
+            return risultato;
+        }
+
+        synchronized LocalDateTime prossimoInizio(LocalDateTime momento) {
+            return albero.prossimoInizio(momento);
+        }
+    }
+}
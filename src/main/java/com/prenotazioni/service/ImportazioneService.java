@@ -0,0 +1,353 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.dto.EsitoImportazione;
+import com.prenotazioni.dto.IntervalloPrenotazione;
+import com.prenotazioni.model.Aula;
+import com.prenotazioni.model.Corso;
+import com.prenotazioni.model.Prenotazione;
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+import com.prenotazioni.model.Utente;
+import com.prenotazioni.repository.AulaRepository;
+import com.prenotazioni.repository.CorsoRepository;
+import com.prenotazioni.repository.PrenotazioneBatchRepository;
+import com.prenotazioni.repository.PrenotazioneRepository;
+import com.prenotazioni.repository.UtenteRepository;
+import com.prenotazioni.repository.VersioniRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+// Importazione massiva dell'orario da CSV (aula, corso, inizio, fine, descrizione).
+// Il file viene letto in streaming a blocchi di DIMENSIONE_BLOCCO righe: ogni blocco viene verificato e
+// salvato in una propria transazione, quindi in memoria c'è al massimo un blocco alla volta.
+@Service
+public class ImportazioneService {
+
+    private static final int DIMENSIONE_BLOCCO = 1000;
+
+    // Intestazione riconosciuta: esattamente queste colonne, descrizione facoltativa
+    private static final List<String> INTESTAZIONE = List.of("aula", "corso", "inizio", "fine", "descrizione");
+
+    @Autowired
+    private PrenotazioneRepository prenotazioneRepository;
+
+    @Autowired
+    private PrenotazioneBatchRepository prenotazioneBatchRepository;
+
+    @Autowired
+    private AulaRepository aulaRepository;
+
+    @Autowired
+    private CorsoRepository corsoRepository;
+
+    @Autowired
+    private UtenteRepository utenteRepository;
+
+    @Autowired
+    private DisponibilitaIndex disponibilitaIndex;
+
+    @Autowired
+    private OccupazioneGiornalieraService occupazioneGiornalieraService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private VersioniRepository versioniRepository;
+
+    // Riga del file già validata, in attesa della verifica dei conflitti
+    private record RigaImport(long numero, Aula aula, Corso corso, LocalDateTime inizio, LocalDateTime fine,
+                              String descrizione) {}
+
+    // Importa le prenotazioni del CSV a nome dell'admin. Aula e corso possono essere indicati per id o per nome
+    // (un valore numerico è prima cercato tra gli id); la prima riga viene saltata solo se contiene esattamente
+    // i nomi delle colonne. Restituisce null se l'admin non esiste.
+    public EsitoImportazione importaCsv(InputStream csv, Long adminId) throws IOException {
+        Optional<Utente> admin = utenteRepository.findById(adminId);
+        if (admin.isEmpty()) {
+            return null;
+        }
+
+        // Aule e corsi sono pochi rispetto alle righe: vengono risolti in memoria invece che con una query per riga.
+        // Id e nomi in mappe separate: un'aula chiamata "12" non nasconde l'aula con id 12
+        Ricerca<Aula> aule = new Ricerca<>();
+        for (Aula aula : aulaRepository.findAll()) {
+            aule.aggiungi(aula.getId(), aula.getNome(), aula);
+        }
+        Ricerca<Corso> corsi = new Ricerca<>();
+        for (Corso corso : corsoRepository.findAll()) {
+            corsi.aggiungi(corso.getId(), corso.getNome(), corso);
+        }
+
+        EsitoImportazione esito = new EsitoImportazione();
+        List<RigaImport> blocco = new ArrayList<>(DIMENSIONE_BLOCCO);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8))) {
+            String linea;
+            long numero = 0;
+            while ((linea = reader.readLine()) != null) {
+                numero++;
+                if (linea.isBlank() || (numero == 1 && isIntestazione(linea))) {
+                    continue; // Riga vuota o intestazione
+                }
+                esito.rigaLetta();
+                RigaImport riga = interpreta(numero, linea, aule, corsi, esito);
+                if (riga != null) {
+                    blocco.add(riga);
+                }
+                if (blocco.size() == DIMENSIONE_BLOCCO) {
+                    salvaBlocco(blocco, admin.get(), esito);
+                    blocco.clear();
+                }
+            }
+            if (!blocco.isEmpty()) {
+                salvaBlocco(blocco, admin.get(), esito);
+            }
+        } finally {
+            // Le prenotazioni sono state inserite senza passare dall'indice: viene ricostruito una volta alla fine,
+            // anche se l'importazione si interrompe (file illeggibile, errore del database) dopo blocchi già salvati
+            if (esito.getImportate() > 0) {
+                disponibilitaIndex.riallinea();
+            }
+        }
+        System.out.println("📥 Importazione CSV: " + esito.getImportate() + " prenotazioni importate, "
+            + esito.getScartate() + " righe scartate");
+        return esito;
+    }
+
+    // Aule o corsi indicati nel file per id o per nome (senza distinzione tra maiuscole e minuscole)
+    private static class Ricerca<T> {
+        private final Map<Long, T> perId = new HashMap<>();
+        private final Map<String, T> perNome = new HashMap<>();
+
+        void aggiungi(Long id, String nome, T valore) {
+            perId.put(id, valore);
+            if (nome != null) {
+                perNome.putIfAbsent(nome.toLowerCase(Locale.ROOT), valore);
+            }
+        }
+
+        T trova(String campo) {
+            if (!campo.isEmpty() && campo.chars().allMatch(Character::isDigit)) {
+                try {
+                    T perNumero = perId.get(Long.valueOf(campo));
+                    if (perNumero != null) {
+                        return perNumero;
+                    }
+                } catch (NumberFormatException e) {
+                    // Numero oltre il range di Long: può essere solo un nome
+                }
+            }
+            return perNome.get(campo.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static boolean isIntestazione(String linea) {
+        List<String> campi = dividiCampi(linea).stream().map(c -> c.toLowerCase(Locale.ROOT)).toList();
+        return campi.size() >= INTESTAZIONE.size() - 1 && campi.equals(INTESTAZIONE.subList(0, campi.size()));
+    }
+
+    // Valida una riga del CSV; se non è valida la registra tra gli errori e restituisce null
+    private RigaImport interpreta(long numero, String linea, Ricerca<Aula> aule, Ricerca<Corso> corsi,
+                                  EsitoImportazione esito) {
+        List<String> campi = dividiCampi(linea);
+        if (campi.size() < 4) {
+            esito.scarta(numero, "Campi attesi: aula, corso, inizio, fine, descrizione");
+            return null;
+        }
+
+        Aula aula = aule.trova(campi.get(0));
+        if (aula == null) {
+            esito.scarta(numero, "Aula non trovata: " + campi.get(0));
+            return null;
+        }
+        Corso corso = null;
+        if (!campi.get(1).isEmpty()) {
+            corso = corsi.trova(campi.get(1));
+            if (corso == null) {
+                esito.scarta(numero, "Corso non trovato: " + campi.get(1));
+                return null;
+            }
+        }
+
+        LocalDateTime inizio;
+        LocalDateTime fine;
+        try {
+            inizio = LocalDateTime.parse(campi.get(2));
+            fine = LocalDateTime.parse(campi.get(3));
+        } catch (DateTimeParseException e) {
+            esito.scarta(numero, "Formato data non valido. Usa: YYYY-MM-DDTHH:MM:SS");
+            return null;
+        }
+        if (!fine.isAfter(inizio)) {
+            esito.scarta(numero, "La fine deve essere successiva all'inizio");
+            return null;
+        }
+
+        String descrizione = campi.size() > 4 ? campi.get(4) : null;
+        if (descrizione != null && descrizione.length() > 500) {
+            esito.scarta(numero, "Descrizione oltre i 500 caratteri");
+            return null;
+        }
+        return new RigaImport(numero, aula, corso, inizio, fine, descrizione);
+    }
+
+    // Verifica e salva un blocco in un'unica transazione, con le righe delle aule coinvolte bloccate
+    // (come per le prenotazioni singole) così nessuno può prenotare nel frattempo le stesse aule
+    private void salvaBlocco(List<RigaImport> blocco, Utente admin, EsitoImportazione esito) {
+        Map<Long, List<RigaImport>> perAula = new TreeMap<>();
+        LocalDateTime primoInizio = blocco.get(0).inizio();
+        LocalDateTime ultimaFine = blocco.get(0).fine();
+        for (RigaImport riga : blocco) {
+            perAula.computeIfAbsent(riga.aula().getId(), id -> new ArrayList<>()).add(riga);
+            if (riga.inizio().isBefore(primoInizio)) {
+                primoInizio = riga.inizio();
+            }
+            if (riga.fine().isAfter(ultimaFine)) {
+                ultimaFine = riga.fine();
+            }
+        }
+        LocalDateTime inizioBlocco = primoInizio;
+        LocalDateTime fineBlocco = ultimaFine;
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                aulaRepository.findAllByIdInForUpdate(perAula.keySet());
+
+                // Una sola query per le prenotazioni esistenti di tutte le aule del blocco
+                Map<Long, List<IntervalloPrenotazione>> esistentiPerAula = new HashMap<>();
+                for (IntervalloPrenotazione esistente : prenotazioneRepository
+                        .findIntervalliAttiviByAulaIdInAndPeriodo(perAula.keySet(), inizioBlocco, fineBlocco)) {
+                    esistentiPerAula.computeIfAbsent(esistente.aulaId(), id -> new ArrayList<>()).add(esistente);
+                }
+
+                LocalDateTime dataCreazione = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+                List<Prenotazione> nuove = new ArrayList<>(blocco.size());
+                for (Map.Entry<Long, List<RigaImport>> aula : perAula.entrySet()) {
+                    List<RigaImport> accettate = verificaAula(aula.getValue(),
+                        esistentiPerAula.getOrDefault(aula.getKey(), List.of()), esito);
+                    for (RigaImport riga : accettate) {
+                        nuove.add(nuovaPrenotazione(riga, admin, dataCreazione));
+                    }
+                }
+                prenotazioneBatchRepository.inserisci(nuove);
+                occupazioneGiornalieraService.registraTutte(nuove);
+                versioniRepository.incrementaPrenotazioni(nuove.stream().map(p -> p.getAula().getId()).distinct().toList());
+                esito.importate(nuove.size());
+            });
+        } catch (PessimisticLockingFailureException e) {
+            // Aule occupate da altre transazioni troppo a lungo: il blocco viene scartato per intero
+            for (RigaImport riga : blocco) {
+                esito.scarta(riga.numero(), "Aula momentaneamente bloccata, riprovare l'importazione di questa riga");
+            }
+        }
+    }
+
+    // Sweep-line sulle righe di una sola aula ordinate per inizio. Ogni riga viene confrontata:
+    // - con le prenotazioni esistenti (ordinate per inizio): le sole candidate iniziano in
+    //   (inizio - durataMassima, fine), e l'estremo sinistro avanza in modo monotono;
+    // - con le righe già accettate del file: essendo ordinate e senza sovrapposizioni tra loro,
+    //   basta confrontarsi con l'ultima accettata, che ha la fine più avanzata.
+    // In caso di conflitto tra righe del file vince quella che inizia prima.
+    private List<RigaImport> verificaAula(List<RigaImport> righe, List<IntervalloPrenotazione> esistenti,
+                                          EsitoImportazione esito) {
+        righe.sort(Comparator.comparing(RigaImport::inizio).thenComparingLong(RigaImport::numero));
+        Duration durataMassima = Duration.ZERO;
+        for (IntervalloPrenotazione esistente : esistenti) {
+            Duration durata = Duration.between(esistente.inizio(), esistente.fine());
+            if (durata.compareTo(durataMassima) > 0) {
+                durataMassima = durata;
+            }
+        }
+
+        List<RigaImport> accettate = new ArrayList<>();
+        int primaCandidata = 0;
+        for (RigaImport riga : righe) {
+            LocalDateTime limiteSinistro = riga.inizio().minus(durataMassima);
+            while (primaCandidata < esistenti.size() && !esistenti.get(primaCandidata).inizio().isAfter(limiteSinistro)) {
+                primaCandidata++;
+            }
+            IntervalloPrenotazione conflitto = null;
+            for (int i = primaCandidata; i < esistenti.size() && esistenti.get(i).inizio().isBefore(riga.fine()); i++) {
+                if (esistenti.get(i).siSovrappone(riga.inizio(), riga.fine())) {
+                    conflitto = esistenti.get(i);
+                    break;
+                }
+            }
+            if (conflitto != null) {
+                esito.scarta(riga.numero(), "Aula " + riga.aula().getNome() + " già occupata dalla prenotazione "
+                    + conflitto.id() + " (" + conflitto.inizio() + " - " + conflitto.fine() + ")");
+                continue;
+            }
+
+            RigaImport ultima = accettate.isEmpty() ? null : accettate.get(accettate.size() - 1);
+            if (ultima != null && ultima.fine().isAfter(riga.inizio())) {
+                esito.scarta(riga.numero(), "Si sovrappone alla riga " + ultima.numero() + " del file");
+                continue;
+            }
+            accettate.add(riga);
+        }
+        return accettate;
+    }
+
+    private Prenotazione nuovaPrenotazione(RigaImport riga, Utente admin, LocalDateTime dataCreazione) {
+        Prenotazione prenotazione = new Prenotazione();
+        prenotazione.setAula(riga.aula());
+        prenotazione.setCorso(riga.corso());
+        prenotazione.setUtente(admin);
+        prenotazione.setInizio(riga.inizio());
+        prenotazione.setFine(riga.fine());
+        prenotazione.setStato(StatoPrenotazione.PRENOTATA);
+        prenotazione.setDescrizione(riga.descrizione());
+        prenotazione.setDataCreazione(dataCreazione);
+        return prenotazione;
+    }
+
+    // Divide una riga CSV separata da virgole; i campi tra doppi apici possono contenere virgole ("" = apice)
+    private static List<String> dividiCampi(String linea) {
+        List<String> campi = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean traApici = false;
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (traApici) {
+                if (c == '"' && i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                    campo.append('"');
+                    i++;
+                } else if (c == '"') {
+                    traApici = false;
+                } else {
+                    campo.append(c);
+                }
+            } else if (c == '"') {
+                traApici = true;
+            } else if (c == ',') {
+                campi.add(campo.toString().trim());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        campi.add(campo.toString().trim());
+        return campi;
+    }
+}
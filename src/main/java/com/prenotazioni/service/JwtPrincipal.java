@@ -0,0 +1,20 @@
+package com.prenotazioni.service;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// Dati dell'utente autenticato estratti una sola volta dal token JWT verificato
+public record JwtPrincipal(Long id, String email, String ruolo) {
+
+    // Il ruolo del token diventa l'authority ROLE_<RUOLO> (es. "admin" -> ROLE_ADMIN)
+    public List<GrantedAuthority> authorities() {
+        if (ruolo == null || ruolo.isBlank()) {
+            return Collections.emptyList();
+        }
+        return List.of(new SimpleGrantedAuthority("ROLE_" + ruolo.toUpperCase(Locale.ROOT)));
+    }
+}
@@ -1,18 +1,73 @@
 package com.prenotazioni.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import com.prenotazioni.model.Utente;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class JwtService {
 	private final Key key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
 	private final long EXPIRATION = 1000 * 60 * 60; // 1 ora
+	// Il parser è immutabile e thread-safe: viene costruito una sola volta
+	private final JwtParser parser = Jwts.parser().setSigningKey(key).build();
+
+	// Cache dei token già verificati, indicizzata per digest SHA-256 del token (Caffeine, dimensione limitata):
+	// letture senza lock globale, ogni voce scade dopo il TTL o all'"exp" del token se arriva prima
+	@Value("${prenotazioni.jwt.cache.max-size:10000}")
+	private int cacheMaxSize;
+	@Value("${prenotazioni.jwt.cache.ttl-seconds:300}")
+	private long cacheTtlSeconds;
+
+	private Cache<String, TokenVerificato> cache;
+
+	// Principal già verificato e istante (ms) oltre il quale la voce non è più valida
+	private record TokenVerificato(JwtPrincipal principal, long scadenza) {}
+
+	@PostConstruct
+	void creaCache() {
+		cache = Caffeine.newBuilder()
+				.maximumSize(cacheMaxSize)
+				.expireAfter(new Expiry<String, TokenVerificato>() {
+					@Override
+					public long expireAfterCreate(String digest, TokenVerificato verificato, long currentTime) {
+						return TimeUnit.MILLISECONDS.toNanos(Math.max(0, verificato.scadenza() - System.currentTimeMillis()));
+					}
+
+					@Override
+					public long expireAfterUpdate(String digest, TokenVerificato verificato, long currentTime,
+												  long currentDuration) {
+						return expireAfterCreate(digest, verificato, currentTime);
+					}
+
+					@Override
+					public long expireAfterRead(String digest, TokenVerificato verificato, long currentTime,
+												long currentDuration) {
+						return currentDuration;
+					}
+				})
+				.recordStats()
+				.build();
+	}
 
 	public String generateToken(Utente utente) {
 		return Jwts.builder()
@@ -25,43 +80,54 @@ public class JwtService {
 				.compact();
 	}
 
-	public boolean validateToken(String token) {
-		try {
-			Jwts.parser()
-            .setSigningKey(key)
-            .build()
-            .parseClaimsJws(token);
+	// Verifica firma e scadenza del token ed estrae id, email e ruolo in un'unica lettura.
+	// Un token già verificato viene servito dalla cache finché non scade (mai oltre il suo "exp").
+	// Restituisce null se il token non è valido.
+	public JwtPrincipal parseToken(String token) {
+		String digest = digest(token);
+		TokenVerificato verificato = cache.getIfPresent(digest);
+		if (verificato != null) {
+			return verificato.principal();
+		}
+		// Assente o scaduto: va verificato di nuovo (e verrà rifiutato se oltre "exp")
+		long now = System.currentTimeMillis();
 
-			return true;
+		try {
+			Claims claims = parser.parseClaimsJws(token).getBody();
+			JwtPrincipal principal = new JwtPrincipal(
+				claims.get("id", Long.class),
+				claims.getSubject(),
+				claims.get("ruolo", String.class)
+			);
+			long scadenza = now + cacheTtlSeconds * 1000;
+			if (claims.getExpiration() != null) {
+				scadenza = Math.min(scadenza, claims.getExpiration().getTime());
+			}
+			cache.put(digest, new TokenVerificato(principal, scadenza));
+			return principal;
 		} catch (Exception e) {
-			return false;
+			return null;
 		}
 	}
 
-	public String getEmailFromToken(String token) {
-		return Jwts.parser()
-            .setSigningKey(key)
-            .build()
-            .parseClaimsJws(token)
-            .getBody()
-            .getSubject();
-    }
+	// Contatori della cache dei token verificati
+	public Map<String, Object> getStatisticheCache() {
+		CacheStats stats = cache.stats();
+		Map<String, Object> statistiche = new LinkedHashMap<>();
+		statistiche.put("hits", stats.hitCount());
+		statistiche.put("misses", stats.missCount());
+		statistiche.put("hitRatio", stats.requestCount() > 0 ? stats.hitRate() : 0.0);
+		statistiche.put("size", cache.estimatedSize());
+		statistiche.put("maxSize", cacheMaxSize);
+		return statistiche;
+	}
 
-	public String getRuoloFromToken(String token) {
-		return Jwts.parser()
-            .setSigningKey(key)
-            .build()
-            .parseClaimsJws(token)
-            .getBody()
-            .get("ruolo", String.class);
-    }
-    
-    public Long getUserIdFromToken(String token) {
-		return Jwts.parser()
-            .setSigningKey(key)
-            .build()
-            .parseClaimsJws(token)
-            .getBody()
-            .get("id", Long.class);
-    }
+	private static String digest(String token) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+			return Base64.getEncoder().encodeToString(hash);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 non disponibile", e);
+		}
+	}
 }
@@ -0,0 +1,86 @@
+package com.prenotazioni.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Lock a strisce indicizzati per aulaId: le operazioni sulla stessa aula vengono serializzate,
+// quelle su aule diverse procedono in parallelo (salvo rare collisioni sulla stessa striscia).
+// Vale solo all'interno di questa istanza: tra istanze diverse la mutua esclusione è data dal lock
+// sulla riga dell'aula (AulaRepository.findByIdForUpdate); questo livello evita che le richieste
+// concorrenti dello stesso nodo occupino connessioni in attesa sul database.
+@Component
+public class LockPerAula {
+
+    private static final int STRISCE = 1024; // Potenza di due
+
+    private final ReentrantLock[] strisce = new ReentrantLock[STRISCE];
+
+    @Value("${prenotazioni.lock.attesa-massima-ms:5000}")
+    private long attesaMassimaMs;
+
+    private final AtomicLong acquisizioni = new AtomicLong();
+    private final AtomicLong timeout = new AtomicLong();
+    private final AtomicLong attesaTotaleNs = new AtomicLong();
+    private final AtomicLong attesaMassimaOsservataNs = new AtomicLong();
+
+    public LockPerAula() {
+        for (int i = 0; i < STRISCE; i++) {
+            strisce[i] = new ReentrantLock();
+        }
+    }
+
+    // Esegue l'operazione tenendo il lock dell'aula.
+    // Restituisce null senza eseguirla se il lock non si libera entro l'attesa massima.
+    public <T> T eseguiInEsclusiva(Long aulaId, Supplier<T> operazione) {
+        ReentrantLock lock = strisciaDi(aulaId);
+        long inizioAttesa = System.nanoTime();
+        boolean acquisito;
+        try {
+            acquisito = lock.tryLock(attesaMassimaMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquisito = false;
+        }
+        if (!acquisito) {
+            timeout.incrementAndGet();
+            System.out.println("⏳ Lock dell'aula " + aulaId + " non acquisito entro " + attesaMassimaMs + " ms");
+            return null;
+        }
+
+        long attesa = System.nanoTime() - inizioAttesa;
+        acquisizioni.incrementAndGet();
+        attesaTotaleNs.addAndGet(attesa);
+        attesaMassimaOsservataNs.accumulateAndGet(attesa, Math::max);
+        try {
+            return operazione.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Contatori del lock locale
+    public Map<String, Object> getStatistiche() {
+        long n = acquisizioni.get();
+        Map<String, Object> statistiche = new LinkedHashMap<>();
+        statistiche.put("acquisizioni", n);
+        statistiche.put("timeout", timeout.get());
+        statistiche.put("attesaMediaMs", n > 0 ? attesaTotaleNs.get() / n / 1_000_000.0 : 0.0);
+        statistiche.put("attesaMassimaMs", attesaMassimaOsservataNs.get() / 1_000_000.0);
+        statistiche.put("attesaLimiteMs", attesaMassimaMs);
+        return statistiche;
+    }
+
+    private ReentrantLock strisciaDi(Long aulaId) {
+        int h = Objects.hashCode(aulaId);
+        h ^= (h >>> 16); // Distribuisce anche gli id con bit alti diversi
+        return strisce[h & (STRISCE - 1)];
+    }
+}
@@ -0,0 +1,190 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.dto.IntervalloPrenotazione;
+import com.prenotazioni.model.Aula;
+import com.prenotazioni.model.OccupazioneGiornaliera;
+import com.prenotazioni.model.Prenotazione;
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+import com.prenotazioni.repository.AulaRepository;
+import com.prenotazioni.repository.OccupazioneGiornalieraRepository;
+import com.prenotazioni.repository.PrenotazioneRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Mantiene la tabella occupazione_giornaliera. Gli aggiornamenti incrementali vanno chiamati nella stessa
+// transazione che modifica le prenotazioni, con la riga dell'aula bloccata (vedi PrenotazioneService):
+// così le letture-modifiche delle righe di riepilogo della stessa aula non si sovrappongono.
+@Service
+public class OccupazioneGiornalieraService {
+
+    private static final int DIMENSIONE_BLOCCO = 500;
+
+    @Autowired
+    private OccupazioneGiornalieraRepository occupazioneRepository;
+
+    @Autowired
+    private PrenotazioneRepository prenotazioneRepository;
+
+    @Autowired
+    private AulaRepository aulaRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Aggiunge una prenotazione appena creata
+    public void registra(Prenotazione prenotazione) {
+        registraTutte(List.of(prenotazione));
+    }
+
+    // Aggiunge più prenotazioni create insieme (serie, importazioni): una lettura e una scrittura per giorno toccato
+    public void registraTutte(List<Prenotazione> prenotazioni) {
+        Map<OccupazioneGiornaliera.Chiave, long[]> variazioni = new HashMap<>();
+        for (Prenotazione prenotazione : prenotazioni) {
+            accumula(variazioni, prenotazione.getAula().getId(), prenotazione.getInizio(), prenotazione.getFine(),
+                prenotazione.getStato(), 1);
+        }
+        applica(variazioni);
+    }
+
+    // Sposta una prenotazione dallo stato precedente a quello attuale (es. annullamento)
+    public void cambiaStato(Prenotazione prenotazione, StatoPrenotazione precedente) {
+        if (precedente == prenotazione.getStato()) {
+            return;
+        }
+        Map<OccupazioneGiornaliera.Chiave, long[]> variazioni = new HashMap<>();
+        Long aulaId = prenotazione.getAula().getId();
+        accumula(variazioni, aulaId, prenotazione.getInizio(), prenotazione.getFine(), precedente, -1);
+        accumula(variazioni, aulaId, prenotazione.getInizio(), prenotazione.getFine(), prenotazione.getStato(), 1);
+        applica(variazioni);
+    }
+
+    // Ricostruisce da zero il riepilogo, un'aula alla volta: ogni aula in una propria transazione con la sola
+    // sua riga bloccata, così le sue prenotazioni non cambiano durante la ricostruzione mentre quelle delle
+    // altre aule proseguono. Se si interrompe (lock timeout) le aule già ricostruite restano corrette e
+    // la ricostruzione può essere ripetuta. Restituisce il numero di prenotazioni lette.
+    public long ricostruisci() {
+        List<Long> aulaIds = aulaRepository.findAll().stream().map(Aula::getId).collect(Collectors.toList());
+        long lette = 0;
+        long righe = 0;
+        for (Long aulaId : aulaIds) {
+            long[] aula = transactionTemplate.execute(status -> ricostruisciAula(aulaId));
+            lette += aula[0];
+            righe += aula[1];
+        }
+        transactionTemplate.executeWithoutResult(status -> occupazioneRepository.deleteAuleRimosse());
+        System.out.println("📊 Riepilogo occupazione ricostruito: " + lette + " prenotazioni, " + righe + " righe");
+        return lette;
+    }
+
+    // {prenotazioni lette, righe scritte} di una sola aula; va chiamato in una transazione
+    private long[] ricostruisciAula(Long aulaId) {
+        if (aulaRepository.findByIdForUpdate(aulaId).isEmpty()) {
+            return new long[2]; // Eliminata nel frattempo: le sue righe vengono tolte alla fine
+        }
+        occupazioneRepository.deleteByAulaId(aulaId);
+
+        Map<OccupazioneGiornaliera.Chiave, long[]> totali = new HashMap<>();
+        long lette = 0;
+        try (Stream<IntervalloPrenotazione> intervalli = prenotazioneRepository.streamIntervalliByAulaId(aulaId)) {
+            Iterator<IntervalloPrenotazione> iterator = intervalli.iterator();
+            while (iterator.hasNext()) {
+                IntervalloPrenotazione intervallo = iterator.next();
+                accumula(totali, intervallo.aulaId(), intervallo.inizio(), intervallo.fine(), intervallo.stato(), 1);
+                lette++;
+            }
+        }
+
+        // Chiavi nuove: nessuna SELECT, INSERT raggruppate dal batch JDBC di Hibernate
+        List<OccupazioneGiornaliera> blocco = new ArrayList<>(DIMENSIONE_BLOCCO);
+        long righe = 0;
+        for (Map.Entry<OccupazioneGiornaliera.Chiave, long[]> totale : totali.entrySet()) {
+            if (vuota(totale.getValue()[0], totale.getValue()[1])) {
+                continue; // Meno di un minuto nel giorno successivo all'inizio: la riga non esiste
+            }
+            righe++;
+            OccupazioneGiornaliera riga = new OccupazioneGiornaliera(totale.getKey());
+            riga.setMinutiPrenotati(totale.getValue()[0]);
+            riga.setNumeroPrenotazioni((int) totale.getValue()[1]);
+            blocco.add(riga);
+            if (blocco.size() == DIMENSIONE_BLOCCO) {
+                occupazioneRepository.saveAll(blocco);
+                occupazioneRepository.flush();
+                blocco.clear();
+            }
+        }
+        occupazioneRepository.saveAll(blocco);
+        return new long[] {lette, righe};
+    }
+
+    // Totali precalcolati dei giorni interi che toccano [inizio, fine): per aula e stato, e per giorno e stato
+    // (aulaId opzionale). Ogni prenotazione è contata una sola volta, nel giorno in cui inizia
+    @Transactional(readOnly = true)
+    public Map<String, Object> getRiepilogo(LocalDateTime inizio, LocalDateTime fine, Long aulaId) {
+        LocalDate da = inizio.toLocalDate();
+        LocalDate a = fine.toLocalTime().equals(LocalTime.MIDNIGHT) ? fine.toLocalDate() : fine.toLocalDate().plusDays(1);
+        Map<String, Object> riepilogo = new LinkedHashMap<>();
+        riepilogo.put("from", da);
+        riepilogo.put("to", a);
+        riepilogo.put("aule", occupazioneRepository.totaliPerAula(da, a, aulaId));
+        riepilogo.put("giorni", occupazioneRepository.totaliPerGiorno(da, a, aulaId));
+        return riepilogo;
+    }
+
+    // Ripartisce i minuti di [inizio, fine) sui giorni che tocca; la prenotazione è contata solo nel giorno
+    // in cui inizia, così le somme su più giorni non la contano più volte: {minuti, numero di prenotazioni}
+    private static void accumula(Map<OccupazioneGiornaliera.Chiave, long[]> variazioni, Long aulaId,
+                                 LocalDateTime inizio, LocalDateTime fine, StatoPrenotazione stato, int segno) {
+        LocalDate giorno = inizio.toLocalDate();
+        while (giorno.atStartOfDay().isBefore(fine)) {
+            LocalDateTime inizioGiorno = giorno.atStartOfDay();
+            LocalDateTime fineGiorno = giorno.plusDays(1).atStartOfDay();
+            LocalDateTime da = inizio.isAfter(inizioGiorno) ? inizio : inizioGiorno;
+            LocalDateTime a = fine.isBefore(fineGiorno) ? fine : fineGiorno;
+            long[] variazione = variazioni.computeIfAbsent(
+                new OccupazioneGiornaliera.Chiave(aulaId, giorno, stato), k -> new long[2]);
+            variazione[0] += segno * Duration.between(da, a).toMinutes();
+            if (da.equals(inizio)) {
+                variazione[1] += segno;
+            }
+            giorno = giorno.plusDays(1);
+        }
+    }
+
+    private void applica(Map<OccupazioneGiornaliera.Chiave, long[]> variazioni) {
+        for (Map.Entry<OccupazioneGiornaliera.Chiave, long[]> variazione : variazioni.entrySet()) {
+            OccupazioneGiornaliera riga = occupazioneRepository.findById(variazione.getKey())
+                .orElseGet(() -> new OccupazioneGiornaliera(variazione.getKey()));
+            riga.setMinutiPrenotati(riga.getMinutiPrenotati() + variazione.getValue()[0]);
+            riga.setNumeroPrenotazioni(riga.getNumeroPrenotazioni() + (int) variazione.getValue()[1]);
+            if (vuota(riga.getMinutiPrenotati(), riga.getNumeroPrenotazioni())) {
+                // Nessuna prenotazione rimasta: come dopo una ricostruzione, la riga non esiste
+                if (!riga.isNew()) {
+                    occupazioneRepository.delete(riga);
+                }
+                continue;
+            }
+            occupazioneRepository.save(riga);
+        }
+    }
+
+    // Un giorno successivo a quello di inizio ha solo minuti: la riga serve finché ne ha
+    private static boolean vuota(long minuti, long prenotazioni) {
+        return minuti <= 0 && prenotazioni <= 0;
+    }
+}
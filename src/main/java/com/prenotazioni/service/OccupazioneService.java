@@ -0,0 +1,161 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.dto.IntervalloPrenotazione;
+import com.prenotazioni.dto.ReportOccupazione;
+import com.prenotazioni.model.Aula;
+import com.prenotazioni.repository.AulaRepository;
+import com.prenotazioni.repository.PrenotazioneRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Statistiche di utilizzo delle aule (mappa di calore giorno della settimana x ora)
+@Service
+public class OccupazioneService {
+
+    private static final int FASCE = 7 * 24;
+
+    @Autowired
+    private PrenotazioneRepository prenotazioneRepository;
+
+    @Autowired
+    private AulaRepository aulaRepository;
+
+    // Calcola l'occupazione nel periodo [from, to) per le aule richieste (tutte se aulaIds è vuoto),
+    // considerando solo l'orario [oraApertura, oraChiusura) dei giorni feriali (e del weekend se richiesto).
+    // Il database restituisce solo id, aula e orari delle prenotazioni attive, in streaming e ordinati per
+    // aula e inizio: le prenotazioni sovrapposte della stessa aula vengono fuse al volo, così ogni minuto
+    // viene contato una sola volta, e i minuti vengono ripartiti nelle fasce orarie in un unico passaggio.
+    @Transactional(readOnly = true)
+    public ReportOccupazione calcolaOccupazione(LocalDateTime from, LocalDateTime to, int oraApertura, int oraChiusura,
+                                                boolean weekend, Boolean isVirtual, List<Long> aulaIds) {
+        List<Aula> aule = aulaRepository.findAllOrderByPianoAndNome().stream()
+            .filter(a -> isVirtual == null || a.isVirtual() == isVirtual)
+            .filter(a -> aulaIds == null || aulaIds.isEmpty() || aulaIds.contains(a.getId()))
+            .collect(Collectors.toList());
+        Map<Long, Integer> posizioni = new HashMap<>();
+        for (int i = 0; i < aule.size(); i++) {
+            posizioni.put(aule.get(i).getId(), i);
+        }
+
+        boolean[] aperta = new boolean[FASCE];
+        for (int fascia = 0; fascia < FASCE; fascia++) {
+            int giorno = fascia / 24;
+            int ora = fascia % 24;
+            aperta[fascia] = ora >= oraApertura && ora < oraChiusura && (weekend || giorno < 5);
+        }
+
+        // Secondi disponibili per fascia (uguali per ogni aula)
+        long[] disponibili = new long[FASCE];
+        ripartisci(from, to, from, to, aperta, disponibili);
+
+        // Secondi prenotati per aula e fascia
+        long[][] prenotati = new long[aule.size()][FASCE];
+        if (!aule.isEmpty()) {
+            boolean filtroAule = isVirtual != null || (aulaIds != null && !aulaIds.isEmpty());
+            List<Long> ids = filtroAule ? new ArrayList<>(posizioni.keySet()) : List.of(-1L);
+            try (Stream<IntervalloPrenotazione> intervalli = prenotazioneRepository.streamIntervalliAttivi(from, to, !filtroAule, ids)) {
+                Iterator<IntervalloPrenotazione> iterator = intervalli.iterator();
+                Long aulaCorrente = null;
+                LocalDateTime inizioFuso = null;
+                LocalDateTime fineFusa = null;
+                while (iterator.hasNext()) {
+                    IntervalloPrenotazione intervallo = iterator.next();
+                    if (intervallo.aulaId().equals(aulaCorrente) && !intervallo.inizio().isAfter(fineFusa)) {
+                        if (intervallo.fine().isAfter(fineFusa)) {
+                            fineFusa = intervallo.fine(); // Sovrapposta o contigua: estende l'intervallo fuso
+                        }
+                        continue;
+                    }
+                    if (aulaCorrente != null && posizioni.containsKey(aulaCorrente)) {
+                        ripartisci(inizioFuso, fineFusa, from, to, aperta, prenotati[posizioni.get(aulaCorrente)]);
+                    }
+                    aulaCorrente = intervallo.aulaId();
+                    inizioFuso = intervallo.inizio();
+                    fineFusa = intervallo.fine();
+                }
+                if (aulaCorrente != null && posizioni.containsKey(aulaCorrente)) {
+                    ripartisci(inizioFuso, fineFusa, from, to, aperta, prenotati[posizioni.get(aulaCorrente)]);
+                }
+            }
+        }
+
+        long minutiDisponibiliAula = 0;
+        for (long secondi : disponibili) {
+            minutiDisponibiliAula += secondi;
+        }
+        minutiDisponibiliAula /= 60;
+
+        List<ReportOccupazione.PerAula> perAula = new ArrayList<>();
+        Map<Integer, long[]> perPiano = new TreeMap<>(); // piano -> {aule, minuti prenotati}
+        long[] prenotatiPerFascia = new long[FASCE];
+        for (int i = 0; i < aule.size(); i++) {
+            Aula aula = aule.get(i);
+            long secondiPrenotati = 0;
+            for (int fascia = 0; fascia < FASCE; fascia++) {
+                secondiPrenotati += prenotati[i][fascia];
+                prenotatiPerFascia[fascia] += prenotati[i][fascia];
+            }
+            long minutiPrenotati = secondiPrenotati / 60;
+            perAula.add(new ReportOccupazione.PerAula(aula.getId(), aula.getNome(), aula.getPiano(), minutiPrenotati,
+                minutiDisponibiliAula, ReportOccupazione.utilizzo(minutiPrenotati, minutiDisponibiliAula)));
+            long[] piano = perPiano.computeIfAbsent(aula.getPiano(), p -> new long[2]);
+            piano[0]++;
+            piano[1] += minutiPrenotati;
+        }
+
+        List<ReportOccupazione.PerPiano> piani = new ArrayList<>();
+        for (Map.Entry<Integer, long[]> piano : perPiano.entrySet()) {
+            int numeroAule = (int) piano.getValue()[0];
+            long minutiPrenotati = piano.getValue()[1];
+            long minutiDisponibili = minutiDisponibiliAula * numeroAule;
+            piani.add(new ReportOccupazione.PerPiano(piano.getKey(), numeroAule, minutiPrenotati, minutiDisponibili,
+                ReportOccupazione.utilizzo(minutiPrenotati, minutiDisponibili)));
+        }
+
+        List<ReportOccupazione.PerFascia> fasce = new ArrayList<>();
+        for (int fascia = 0; fascia < FASCE; fascia++) {
+            if (!aperta[fascia]) {
+                continue;
+            }
+            long minutiPrenotati = prenotatiPerFascia[fascia] / 60;
+            long minutiDisponibili = disponibili[fascia] / 60 * aule.size();
+            fasce.add(new ReportOccupazione.PerFascia(DayOfWeek.of(fascia / 24 + 1), fascia % 24, minutiPrenotati,
+                minutiDisponibili, ReportOccupazione.utilizzo(minutiPrenotati, minutiDisponibili)));
+        }
+
+        return new ReportOccupazione(from, to, oraApertura, oraChiusura, weekend, perAula, piani, fasce);
+    }
+
+    // Somma in secondi[fascia] la parte di [inizio, fine) che cade nel periodo [from, to) e nelle fasce aperte
+    private static void ripartisci(LocalDateTime inizio, LocalDateTime fine, LocalDateTime from, LocalDateTime to,
+                                   boolean[] aperta, long[] secondi) {
+        LocalDateTime da = inizio.isBefore(from) ? from : inizio;
+        LocalDateTime a = fine.isAfter(to) ? to : fine;
+        LocalDateTime ora = da.truncatedTo(ChronoUnit.HOURS);
+        while (ora.isBefore(a)) {
+            LocalDateTime oraSuccessiva = ora.plusHours(1);
+            int fascia = (ora.getDayOfWeek().getValue() - 1) * 24 + ora.getHour();
+            if (aperta[fascia]) {
+                LocalDateTime inizioFascia = ora.isBefore(da) ? da : ora;
+                LocalDateTime fineFascia = oraSuccessiva.isAfter(a) ? a : oraSuccessiva;
+                secondi[fascia] += Duration.between(inizioFascia, fineFascia).getSeconds();
+            }
+            ora = oraSuccessiva;
+        }
+    }
+}
@@ -1,26 +1,59 @@
 package com.prenotazioni.service;
 
+import com.prenotazioni.dto.FinestraTemporale;
+import com.prenotazioni.dto.IntervalloPrenotazione;
+import com.prenotazioni.dto.PrenotazioneDettaglio;
+import com.prenotazioni.dto.Pagina;
+import com.prenotazioni.dto.RapportoConflitti;
+import com.prenotazioni.dto.RegolaRicorrenza;
+import com.prenotazioni.dto.RisultatoSerie;
 import com.prenotazioni.model.Aula;
 import com.prenotazioni.model.Corso;
 import com.prenotazioni.model.Prenotazione;
 import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
 import com.prenotazioni.model.Utente;
+import com.prenotazioni.repository.PrenotazioneBatchRepository;
 import com.prenotazioni.repository.PrenotazioneRepository;
 import com.prenotazioni.repository.AulaRepository;
 import com.prenotazioni.repository.CorsoRepository;
 import com.prenotazioni.repository.UtenteRepository;
+import com.prenotazioni.repository.VersioniRepository;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 public class PrenotazioneService {
     
+    // Estremi del periodo di un'esportazione senza filtro sulle date (entro l'intervallo di DATETIME di MySQL)
+    private static final LocalDateTime ESPORTAZIONE_DA = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime ESPORTAZIONE_A = LocalDateTime.of(9999, 12, 31, 0, 0);
+    
     @Autowired
     private PrenotazioneRepository prenotazioneRepository;
     
@@ -32,13 +65,43 @@ public class PrenotazioneService {
     
     @Autowired
     private UtenteRepository utenteRepository;
+    
+    @Autowired
+    private DisponibilitaIndex disponibilitaIndex;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private LockPerAula lockPerAula;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Autowired
+    private PrenotazioneBatchRepository prenotazioneBatchRepository;
+    
+    @Autowired
+    private OccupazioneGiornalieraService occupazioneGiornalieraService;
+    
+    @Autowired
+    private VersioniRepository versioniRepository;
+    
+    @Autowired
+    private EntityManager entityManager;
+    
+    private final AtomicLong timeoutLockDatabase = new AtomicLong();
 
     // Prenota un'aula per una lezione
     public Prenotazione prenotaAula(Long aulaId, Long corsoId, Long utenteId, 
                                    LocalDateTime inizio, LocalDateTime fine, String descrizione) {
-        
-        // Verifica disponibilità
-        if (!isAulaDisponibile(aulaId, inizio, fine)) {
+        return salvaInEsclusiva(aulaId, () -> creaPrenotazione(aulaId, corsoId, utenteId, inizio, fine, descrizione));
+    }
+    
+    private Prenotazione creaPrenotazione(Long aulaId, Long corsoId, Long utenteId,
+                                          LocalDateTime inizio, LocalDateTime fine, String descrizione) {
+        // Verifica disponibilità (sul database, con la riga dell'aula già bloccata)
+        if (!isAulaLiberaSulDatabase(aulaId, inizio, fine)) {
             return null; // Aula non disponibile
         }
         
@@ -75,9 +138,13 @@ public class PrenotazioneService {
     // Blocca un'aula (solo admin)
     public Prenotazione bloccaAula(Long aulaId, Long utenteAdminId, 
                                   LocalDateTime inizio, LocalDateTime fine, String motivo) {
-        
-        // Verifica disponibilità
-        if (!isAulaDisponibile(aulaId, inizio, fine)) {
+        return salvaInEsclusiva(aulaId, () -> creaBlocco(aulaId, utenteAdminId, inizio, fine, motivo));
+    }
+    
+    private Prenotazione creaBlocco(Long aulaId, Long utenteAdminId,
+                                    LocalDateTime inizio, LocalDateTime fine, String motivo) {
+        // Verifica disponibilità (sul database, con la riga dell'aula già bloccata)
+        if (!isAulaLiberaSulDatabase(aulaId, inizio, fine)) {
             return null; // Aula non disponibile
         }
         
@@ -104,7 +171,11 @@ public class PrenotazioneService {
     // Mette un'aula in manutenzione
     public Prenotazione aulaInManutenzione(Long aulaId, Long utenteAdminId, 
                                           LocalDateTime inizio, LocalDateTime fine, String dettagli) {
-        
+        return salvaInEsclusiva(aulaId, () -> creaManutenzione(aulaId, utenteAdminId, inizio, fine, dettagli));
+    }
+    
+    private Prenotazione creaManutenzione(Long aulaId, Long utenteAdminId,
+                                          LocalDateTime inizio, LocalDateTime fine, String dettagli) {
         Optional<Aula> aula = aulaRepository.findById(aulaId);
         Optional<Utente> admin = utenteRepository.findById(utenteAdminId);
         
@@ -125,11 +196,151 @@ public class PrenotazioneService {
         return prenotazioneRepository.save(manutenzione);
     }
     
-    // Verifica se un'aula è disponibile in un determinato periodo
+    // Verifica e inserimento avvengono in un'unica transazione che blocca la riga dell'aula sul database
+    // (SELECT ... FOR UPDATE), così due istanze non possono prenotare la stessa aula in contemporanea.
+    // Il lock locale per aula fa attendere in memoria le richieste concorrenti dello stesso nodo ed è
+    // rilasciato solo dopo il commit e l'aggiornamento dell'indice; le altre aule non vengono bloccate.
+    // Entrambe le attese sono limitate: allo scadere la prenotazione fallisce (null).
+    private Prenotazione salvaInEsclusiva(Long aulaId, Supplier<Prenotazione> inserimento) {
+        return inEsclusiva(aulaId, () -> {
+            Prenotazione salvata = inserimento.get();
+            if (salvata != null) {
+                occupazioneGiornalieraService.registra(salvata);
+            }
+            return salvata;
+        }, disponibilitaIndex::registra);
+    }
+    
+    // Esegue l'operazione sotto il lock locale e sulla riga dell'aula; se l'operazione riesce la versione
+    // delle prenotazioni dell'aula avanza nella stessa transazione. dopoCommit riceve il risultato
+    // (se non null) ancora sotto il lock locale
+    private <T> T inEsclusiva(Long aulaId, Supplier<T> operazione, Consumer<T> dopoCommit) {
+        return lockPerAula.eseguiInEsclusiva(aulaId, () -> {
+            T risultato;
+            try {
+                risultato = transactionTemplate.execute(status -> {
+                    if (aulaId == null || aulaRepository.findByIdForUpdate(aulaId).isEmpty()) {
+                        return null; // Aula inesistente
+                    }
+                    T eseguita = operazione.get();
+                    if (eseguita != null) {
+                        versioniRepository.incrementaPrenotazioni(List.of(aulaId));
+                    }
+                    return eseguita;
+                });
+            } catch (PessimisticLockingFailureException e) {
+                timeoutLockDatabase.incrementAndGet();
+                System.out.println("⏳ Lock sul database per l'aula " + aulaId + " non acquisito: " + e.getMessage());
+                return null;
+            }
+            if (risultato != null) {
+                dopoCommit.accept(risultato);
+            }
+            return risultato;
+        });
+    }
+    
+    // Prenota una serie di lezioni nella stessa aula. Tutte le occorrenze vengono verificate con una sola
+    // query sull'intervallo complessivo della serie e inserite in batch nella stessa transazione:
+    // o vengono create tutte o nessuna. Restituisce null se i dati non sono validi.
+    public RisultatoSerie prenotaSerie(Long aulaId, Long corsoId, Long utenteId,
+                                       List<RegolaRicorrenza.Occorrenza> occorrenze, String descrizione) {
+        if (occorrenze.isEmpty() || !occorrenze.get(0).fine().isAfter(occorrenze.get(0).inizio())) {
+            return null;
+        }
+        // Le occorrenze devono essere ordinate e non sovrapporsi tra loro (la verifica sul database non le confronta)
+        for (int i = 1; i < occorrenze.size(); i++) {
+            if (occorrenze.get(i).inizio().isBefore(occorrenze.get(i - 1).fine())) {
+                return null;
+            }
+        }
+        return inEsclusiva(aulaId, () -> creaSerie(aulaId, corsoId, utenteId, occorrenze, descrizione), risultato -> {
+            for (Prenotazione prenotazione : risultato.prenotazioni()) {
+                disponibilitaIndex.registra(prenotazione);
+            }
+        });
+    }
+    
+    private RisultatoSerie creaSerie(Long aulaId, Long corsoId, Long utenteId,
+                                     List<RegolaRicorrenza.Occorrenza> occorrenze, String descrizione) {
+        Optional<Aula> aula = aulaRepository.findById(aulaId);
+        Optional<Utente> utente = utenteRepository.findById(utenteId);
+        if (aula.isEmpty() || utente.isEmpty()) {
+            return null;
+        }
+        Optional<Corso> corso = Optional.empty();
+        if (corsoId != null) {
+            corso = corsoRepository.findById(corsoId);
+            if (corso.isEmpty()) {
+                return null;
+            }
+        }
+        
+        // Una sola query per tutte le occorrenze, poi confronto in memoria (entrambe le liste sono ordinate per inizio)
+        LocalDateTime primoInizio = occorrenze.get(0).inizio();
+        LocalDateTime ultimaFine = occorrenze.get(occorrenze.size() - 1).fine();
+        List<IntervalloPrenotazione> esistenti = prenotazioneRepository
+            .findIntervalliAttiviByAulaAndPeriodo(aulaId, primoInizio, ultimaFine);
+        List<IntervalloPrenotazione> conflitti = new ArrayList<>();
+        for (RegolaRicorrenza.Occorrenza occorrenza : occorrenze) {
+            for (IntervalloPrenotazione esistente : esistenti) {
+                if (!esistente.inizio().isBefore(occorrenza.fine())) {
+                    break; // Le successive iniziano ancora più tardi
+                }
+                if (esistente.siSovrappone(occorrenza.inizio(), occorrenza.fine()) && !conflitti.contains(esistente)) {
+                    conflitti.add(esistente);
+                }
+            }
+        }
+        if (!conflitti.isEmpty()) {
+            return new RisultatoSerie(Collections.emptyList(), conflitti);
+        }
+        
+        LocalDateTime dataCreazione = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        List<Prenotazione> nuove = new ArrayList<>(occorrenze.size());
+        for (RegolaRicorrenza.Occorrenza occorrenza : occorrenze) {
+            Prenotazione prenotazione = new Prenotazione();
+            prenotazione.setAula(aula.get());
+            prenotazione.setCorso(corso.orElse(null));
+            prenotazione.setUtente(utente.get());
+            prenotazione.setInizio(occorrenza.inizio());
+            prenotazione.setFine(occorrenza.fine());
+            prenotazione.setStato(StatoPrenotazione.PRENOTATA);
+            prenotazione.setDescrizione(descrizione);
+            prenotazione.setDataCreazione(dataCreazione);
+            nuove.add(prenotazione);
+        }
+        prenotazioneBatchRepository.inserisci(nuove); // Assegna gli id generati
+        occupazioneGiornalieraService.registraTutte(nuove);
+        return new RisultatoSerie(nuove, Collections.emptyList());
+    }
+    
+    // Verifica autorevole delle sovrapposizioni: il database è condiviso da tutte le istanze,
+    // l'indice in memoria no (può non vedere ancora le prenotazioni create da altri nodi)
+    private boolean isAulaLiberaSulDatabase(Long aulaId, LocalDateTime inizio, LocalDateTime fine) {
+        if (inizio == null || fine == null || !fine.isAfter(inizio)) {
+            return false; // Intervallo non valido
+        }
+        return !prenotazioneRepository.existsSovrapposizione(aulaId, inizio, fine);
+    }
+    
+    // Contatori dei lock usati per le prenotazioni
+    public Map<String, Object> getStatisticheLock() {
+        Map<String, Object> statistiche = new LinkedHashMap<>();
+        statistiche.put("locale", lockPerAula.getStatistiche());
+        statistiche.put("timeoutDatabase", timeoutLockDatabase.get());
+        return statistiche;
+    }
+    
+    // Verifica se un'aula è disponibile in un determinato periodo (servita dall'indice in memoria)
     public boolean isAulaDisponibile(Long aulaId, LocalDateTime inizio, LocalDateTime fine) {
-        List<Prenotazione> conflitti = prenotazioneRepository
-            .findConflittingReservations(aulaId, inizio, fine);
-        return conflitti.isEmpty();
+        return disponibilitaIndex.isLibera(aulaId, inizio, fine);
+    }
+    
+    // Aule libere in un periodo, filtrate e ordinate per miglior adattamento (una sola query)
+    public List<Aula> getAuleLibere(LocalDateTime inizio, LocalDateTime fine, int minCapienza,
+                                    Integer piano, Boolean isVirtual) {
+        return prenotazioneRepository.findAuleLibereConFiltri(inizio, fine, minCapienza, piano, isVirtual);
     }
     
     // Ottiene tutte le prenotazioni di un'aula in una data specifica
@@ -188,14 +399,16 @@ public class PrenotazioneService {
             return false;
         }
         
-        p.setStato(StatoPrenotazione.ANNULLATA);
-        prenotazioneRepository.save(p);
-        return true;
+        return annullaInEsclusiva(p, null);
     }
     
-    // Lista tutte le prenotazioni per gestione admin
-    public List<Prenotazione> getAllPrenotazioni() {
-        return prenotazioneRepository.findAll();
+    // Lista tutte le prenotazioni per gestione admin, una pagina alla volta
+    public Pagina<Prenotazione> getAllPrenotazioni(Pagina.Cursore cursore, int dimensione) {
+        Limit limit = Limit.of(dimensione + 1);
+        List<Prenotazione> righe = cursore == null
+            ? prenotazioneRepository.findPrimaPagina(limit)
+            : prenotazioneRepository.findPaginaDopo(cursore.inizio(), cursore.id(), limit);
+        return Pagina.da(righe, dimensione, p -> new Pagina.Cursore(p.getInizio(), p.getId()));
     }
     
     // Lista prenotazioni per utente
@@ -203,24 +416,91 @@ public class PrenotazioneService {
         return prenotazioneRepository.findByUtenteId(utenteId);
     }
     
-    // Ottieni dettagli completi per una specifica aula
-    public List<Map<String, Object>> getRoomCompleteDetails(Long aulaId) {
-        return prenotazioneRepository.findCompleteDetailsByAulaId(aulaId);
+    // Ottieni dettagli completi per una specifica aula nella finestra richiesta (limit è la dimensione della pagina)
+    public Pagina<PrenotazioneDettaglio> getRoomCompleteDetails(Long aulaId, FinestraTemporale finestra, Pagina.Cursore cursore) {
+        Limit limit = Limit.of(finestra.limit() + 1);
+        List<PrenotazioneDettaglio> righe = cursore == null
+            ? prenotazioneRepository.findCompleteDetailsByAulaId(aulaId, finestra.from(), finestra.to(), limit)
+            : prenotazioneRepository.findCompleteDetailsByAulaIdDopo(aulaId, finestra.from(), finestra.to(),
+                cursore.inizio(), cursore.id(), limit);
+        return Pagina.da(righe, finestra.limit(), PrenotazioneDettaglio::cursore);
     }
     
-    // Ottieni dettagli completi di tutte le prenotazioni
-    public List<Map<String, Object>> getAllCompleteDetails() {
-        return prenotazioneRepository.findAllCompleteDetails();
+    // Ottieni dettagli completi di tutte le prenotazioni, una pagina alla volta
+    public Pagina<PrenotazioneDettaglio> getAllCompleteDetails(Pagina.Cursore cursore, int dimensione) {
+        Limit limit = Limit.of(dimensione + 1);
+        List<PrenotazioneDettaglio> righe = cursore == null
+            ? prenotazioneRepository.findAllCompleteDetails(limit)
+            : prenotazioneRepository.findAllCompleteDetailsDopo(cursore.inizio(), cursore.id(), limit);
+        return Pagina.da(righe, dimensione, PrenotazioneDettaglio::cursore);
     }
     
-    // Ottieni una singola prenotazione per ID
+    // Esporta i dettagli completi in NDJSON (un oggetto JSON per riga) leggendo le prenotazioni in streaming:
+    // ogni riga viene serializzata e scritta subito, la memoria usata non dipende dalla dimensione della tabella.
+    // Senza inizio o fine il periodo va da ESPORTAZIONE_DA a ESPORTAZIONE_A (vedi streamCompleteDetails)
+    @Transactional(readOnly = true)
+    public long esportaNdjson(LocalDateTime inizio, LocalDateTime fine, Long aulaId, StatoPrenotazione stato,
+                              OutputStream out) throws IOException {
+        long righe = 0;
+        try (Stream<PrenotazioneDettaglio> dettagli = prenotazioneRepository.streamCompleteDetails(
+                inizio != null ? inizio : ESPORTAZIONE_DA, fine != null ? fine : ESPORTAZIONE_A, aulaId, stato)) {
+            Iterator<PrenotazioneDettaglio> iterator = dettagli.iterator();
+            while (iterator.hasNext()) {
+                out.write(objectMapper.writeValueAsBytes(iterator.next()));
+                out.write('\n');
+                righe++;
+            }
+        }
+        out.flush();
+        return righe;
+    }
+    
+    // Trova tutte le coppie di prenotazioni attive sovrapposte nella stessa aula con un'unica lettura in streaming,
+    // ordinata per aula e inizio. Per ogni aula si tiene l'insieme delle prenotazioni ancora "aperte" in un heap
+    // ordinato per fine: all'arrivo di una prenotazione si scartano quelle già terminate e tutte le rimanenti
+    // si sovrappongono alla nuova. Costo O(n log n + k) con k coppie trovate.
+    @Transactional(readOnly = true)
+    public RapportoConflitti trovaConflitti(LocalDateTime inizio, LocalDateTime fine, List<Long> aulaIds, int limite) {
+        boolean tutteLeAule = aulaIds == null || aulaIds.isEmpty();
+        List<Long> filtroAule = tutteLeAule ? List.of(-1L) : aulaIds;
+        
+        List<RapportoConflitti.Conflitto> conflitti = new ArrayList<>();
+        long esaminate = 0;
+        long totali = 0;
+        PriorityQueue<IntervalloPrenotazione> aperte = new PriorityQueue<>(Comparator.comparing(IntervalloPrenotazione::fine));
+        Long aulaCorrente = null;
+        try (Stream<IntervalloPrenotazione> intervalli = prenotazioneRepository.streamIntervalliAttivi(inizio, fine, tutteLeAule, filtroAule)) {
+            Iterator<IntervalloPrenotazione> iterator = intervalli.iterator();
+            while (iterator.hasNext()) {
+                IntervalloPrenotazione corrente = iterator.next();
+                esaminate++;
+                if (!corrente.aulaId().equals(aulaCorrente)) {
+                    aulaCorrente = corrente.aulaId();
+                    aperte.clear();
+                }
+                while (!aperte.isEmpty() && !aperte.peek().fine().isAfter(corrente.inizio())) {
+                    aperte.poll();
+                }
+                for (IntervalloPrenotazione aperta : aperte) {
+                    totali++;
+                    if (conflitti.size() < limite) {
+                        conflitti.add(RapportoConflitti.Conflitto.tra(aperta, corrente));
+                    }
+                }
+                aperte.add(corrente);
+            }
+        }
+        return new RapportoConflitti(esaminate, totali, totali > conflitti.size(), conflitti);
+    }
+    
+    // Ottieni una singola prenotazione per ID (con aula, corso e utente)
     public Prenotazione getPrenotazioneById(Long id) {
-        Optional<Prenotazione> prenotazione = prenotazioneRepository.findById(id);
+        Optional<Prenotazione> prenotazione = prenotazioneRepository.findConDettagliById(id);
         return prenotazione.orElse(null);
     }
     
     // Ottieni dettagli completi per una singola prenotazione
-    public List<Map<String, Object>> getPrenotazioneCompleteDetails(Long prenotazioneId) {
+    public List<PrenotazioneDettaglio> getPrenotazioneCompleteDetails(Long prenotazioneId) {
         return prenotazioneRepository.findCompleteDetailsByPrenotazioneId(prenotazioneId);
     }
     
@@ -250,16 +530,41 @@ public class PrenotazioneService {
         }
         
         // Gli admin possono eliminare qualsiasi prenotazione, indipendentemente dallo stato
-        prenotazione.setStato(StatoPrenotazione.ANNULLATA);
         
         // Aggiorna la descrizione per indicare l'azione admin
         String descrizioneOriginale = prenotazione.getDescrizione() != null ? prenotazione.getDescrizione() : "";
         String nuovaDescrizione = descrizioneOriginale + 
             (descrizioneOriginale.isEmpty() ? "" : " | ") +
             "ANNULLATA DALL'AMMINISTRATORE: " + motivo;
-        prenotazione.setDescrizione(nuovaDescrizione);
         
-        prenotazioneRepository.save(prenotazione);
-        return true;
+        return annullaInEsclusiva(prenotazione, nuovaDescrizione);
+    }
+    
+    // Annulla la prenotazione sotto il lock della sua aula, aggiornando nella stessa transazione il riepilogo
+    // giornaliero; nuovaDescrizione null lascia la descrizione invariata. Annullare una prenotazione già
+    // annullata non cambia nulla
+    private boolean annullaInEsclusiva(Prenotazione prenotazione, String nuovaDescrizione) {
+        Prenotazione annullata = inEsclusiva(prenotazione.getAula().getId(), () -> {
+            Prenotazione attuale = prenotazioneRepository.findById(prenotazione.getId()).orElse(null);
+            if (attuale == null) {
+                return null;
+            }
+            // Con open-in-view findById restituisce l'istanza letta dalla richiesta prima del lock: lo stato va
+            // riletto dal database, altrimenti due annullamenti concorrenti vedono entrambi il vecchio stato e
+            // il riepilogo giornaliero toglie i minuti due volte
+            entityManager.refresh(attuale, LockModeType.PESSIMISTIC_WRITE);
+            if (attuale.getStato() == StatoPrenotazione.ANNULLATA) {
+                return attuale;
+            }
+            StatoPrenotazione precedente = attuale.getStato();
+            attuale.setStato(StatoPrenotazione.ANNULLATA);
+            if (nuovaDescrizione != null) {
+                attuale.setDescrizione(nuovaDescrizione);
+            }
+            Prenotazione salvata = prenotazioneRepository.save(attuale);
+            occupazioneGiornalieraService.cambiaStato(salvata, precedente);
+            return salvata;
+        }, disponibilitaIndex::rimuovi);
+        return annullata != null;
     }
 }
@@ -0,0 +1,44 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.config.CacheConfig;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Contatori della cache di secondo livello di Hibernate (vedi CacheConfig), per /api/admin/metrics
+@Service
+public class StatisticheCacheService {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    public Map<String, Object> getStatistiche() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Map<String, Object> statistiche = new LinkedHashMap<>();
+        statistiche.put("enabled", statistics.isStatisticsEnabled());
+        for (String regione : CacheConfig.REGIONI_ENTITA) {
+            CacheRegionStatistics regionStatistics = statistics.getDomainDataRegionStatistics(regione);
+            statistiche.put(regione, contatori(regionStatistics.getHitCount(), regionStatistics.getMissCount(),
+                regionStatistics.getPutCount()));
+        }
+        statistiche.put("query", contatori(statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount(),
+            statistics.getQueryCachePutCount()));
+        return statistiche;
+    }
+
+    private static Map<String, Object> contatori(long hits, long misses, long puts) {
+        Map<String, Object> contatori = new LinkedHashMap<>();
+        contatori.put("hits", hits);
+        contatori.put("misses", misses);
+        contatori.put("puts", puts);
+        contatori.put("hitRatio", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        return contatori;
+    }
+}
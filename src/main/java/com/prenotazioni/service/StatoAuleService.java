@@ -0,0 +1,181 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.dto.IntervalloPrenotazione;
+import com.prenotazioni.dto.StatoAula;
+import com.prenotazioni.model.Aula;
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+import com.prenotazioni.repository.AulaRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+// Istantanea in memoria dello stato attuale di tutte le aule, letta senza lock né query.
+// Viene ricalcolata dall'indice delle disponibilità quando una prenotazione cambia (evento Modifica) e,
+// tramite il TaskScheduler, esattamente al prossimo inizio o fine di una prenotazione: tra due di questi
+// istanti lo stato delle aule non può cambiare. Il catalogo delle aule viene riletto a ogni riallineamento
+// dell'indice (ogni prenotazioni.indice.resync-ms). Le aule cambiate vengono notificate con un evento Cambiamenti.
+@Service
+public class StatoAuleService {
+
+    public record Istantanea(LocalDateTime aggiornataIl, Map<Long, StatoAula> aule) {}
+
+    public record Cambiamenti(List<StatoAula> aule) {}
+
+    @Autowired
+    private DisponibilitaIndex disponibilitaIndex;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private AulaRepository aulaRepository;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    private volatile Istantanea istantanea = new Istantanea(LocalDateTime.now(), Collections.emptyMap());
+
+    // Aggiornamento programmato al prossimo cambio di stato (accesso solo nei metodi synchronized)
+    private ScheduledFuture<?> aggiornamentoProgrammato;
+    private LocalDateTime prossimoCambio;
+
+    public Istantanea getIstantanea() {
+        return istantanea;
+    }
+
+    // Stato di una singola aula, null se l'aula non è nell'istantanea
+    public StatoAula getStato(Long aulaId) {
+        return istantanea.aule().get(aulaId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void inizializza() {
+        aggiornaTutte();
+        System.out.println("🚦 Stato aule calcolato: " + istantanea.aule().size() + " aule");
+    }
+
+    @EventListener
+    public void onModifica(DisponibilitaIndex.Modifica modifica) {
+        if (modifica.aulaId() == null) {
+            aggiornaTutte();
+        } else {
+            aggiorna(modifica.aulaId());
+        }
+    }
+
+    // Rilegge il catalogo delle aule dal database (non dalla cache) e ricalcola lo stato di tutte
+    public synchronized void aggiornaTutte() {
+        LocalDateTime adesso = LocalDateTime.now();
+        Map<Long, StatoAula> aule = new LinkedHashMap<>();
+        for (Aula aula : aulaRepository.findAllOrderByPianoAndNomeDalDatabase()) {
+            aule.put(aula.getId(), calcola(aula.getId(), aula.getNome(), aula.getPiano(), adesso));
+        }
+        pubblica(adesso, aule);
+    }
+
+    // Ricalcola una sola aula; le altre restano valide fino al loro prossimoCambio
+    public synchronized void aggiorna(Long aulaId) {
+        StatoAula attuale = istantanea.aule().get(aulaId);
+        if (attuale == null) {
+            aggiornaTutte(); // Aula non ancora nel catalogo
+            return;
+        }
+        LocalDateTime adesso = LocalDateTime.now();
+        Map<Long, StatoAula> aule = new LinkedHashMap<>(istantanea.aule());
+        aule.put(aulaId, calcola(aulaId, attuale.nome(), attuale.piano(), adesso));
+        ricalcolaScadute(aule, adesso);
+        pubblica(adesso, aule);
+    }
+
+    // Eseguito dal TaskScheduler a un confine di prenotazione: ricalcola solo le aule il cui stato è scaduto
+    private synchronized void aggiornaScadute() {
+        LocalDateTime adesso = LocalDateTime.now();
+        Map<Long, StatoAula> aule = new LinkedHashMap<>(istantanea.aule());
+        ricalcolaScadute(aule, adesso);
+        pubblica(adesso, aule);
+    }
+
+    private void ricalcolaScadute(Map<Long, StatoAula> aule, LocalDateTime adesso) {
+        for (StatoAula stato : aule.values()) {
+            if (stato.prossimoCambio() != null && !stato.prossimoCambio().isAfter(adesso)) {
+                aule.replace(stato.aulaId(), calcola(stato.aulaId(), stato.nome(), stato.piano(), adesso));
+            }
+        }
+    }
+
+    // Sostituisce l'istantanea, notifica le aule cambiate e riprogramma l'aggiornamento al primo cambio
+    // di stato successivo
+    private void pubblica(LocalDateTime adesso, Map<Long, StatoAula> aule) {
+        Map<Long, StatoAula> precedenti = istantanea.aule();
+        istantanea = new Istantanea(adesso, Collections.unmodifiableMap(aule));
+
+        List<StatoAula> cambiate = new ArrayList<>();
+        for (StatoAula stato : aule.values()) {
+            if (!stato.equals(precedenti.get(stato.aulaId()))) {
+                cambiate.add(stato);
+            }
+        }
+        if (!cambiate.isEmpty()) {
+            eventPublisher.publishEvent(new Cambiamenti(cambiate));
+        }
+
+        LocalDateTime primoCambio = null;
+        for (StatoAula stato : aule.values()) {
+            if (stato.prossimoCambio() != null && (primoCambio == null || stato.prossimoCambio().isBefore(primoCambio))) {
+                primoCambio = stato.prossimoCambio();
+            }
+        }
+        if (primoCambio != null && primoCambio.equals(prossimoCambio)
+                && aggiornamentoProgrammato != null && !aggiornamentoProgrammato.isDone()) {
+            return; // Già programmato
+        }
+        if (aggiornamentoProgrammato != null) {
+            aggiornamentoProgrammato.cancel(false);
+            aggiornamentoProgrammato = null;
+        }
+        prossimoCambio = primoCambio;
+        if (primoCambio != null) {
+            aggiornamentoProgrammato = taskScheduler.schedule(this::aggiornaScadute,
+                primoCambio.atZone(ZoneId.systemDefault()).toInstant());
+        }
+    }
+
+    // Priorità: MANUTENZIONE > BLOCCATA > PRENOTATA
+    private StatoAula calcola(Long aulaId, String nome, int piano, LocalDateTime adesso) {
+        List<IntervalloPrenotazione> attive = disponibilitaIndex.getAttive(aulaId, adesso);
+        IntervalloPrenotazione prevalente = null;
+        LocalDateTime prossimoCambio = disponibilitaIndex.getProssimoInizio(aulaId, adesso);
+        for (IntervalloPrenotazione attiva : attive) {
+            if (prevalente == null || priorita(attiva.stato()) > priorita(prevalente.stato())) {
+                prevalente = attiva;
+            }
+            if (prossimoCambio == null || attiva.fine().isBefore(prossimoCambio)) {
+                prossimoCambio = attiva.fine();
+            }
+        }
+        String stato = prevalente == null ? "LIBERA" : prevalente.stato().name();
+        return new StatoAula(aulaId, nome, piano, stato, prevalente == null ? null : prevalente.id(), prossimoCambio);
+    }
+
+    private static int priorita(StatoPrenotazione stato) {
+        switch (stato) {
+            case MANUTENZIONE: return 3;
+            case BLOCCATA: return 2;
+            case PRENOTATA: return 1;
+            default: return 0;
+        }
+    }
+}
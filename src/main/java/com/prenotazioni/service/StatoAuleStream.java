@@ -0,0 +1,292 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.dto.StatoAula;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Invia ai client collegati in Server-Sent Events le variazioni dello stato delle aule (evento "stato"),
+// precedute dall'istantanea iniziale (evento "snapshot"). Chi pubblica si limita a registrare le variazioni:
+// per ogni client resta in sospeso al più l'ultimo stato di ciascuna aula, quindi un client lento riceve
+// meno eventi invece di accumulare memoria. Gli invii sono fatti da un piccolo pool: un client bloccato
+// in un invio oltre prenotazioni.sse.send-timeout-ms viene scollegato e, finché il suo invio non termina
+// (timeout di scrittura del connettore), il pool riceve un thread in più per non far attendere gli altri.
+@Service
+public class StatoAuleStream {
+
+    @Value("${prenotazioni.sse.send-timeout-ms:10000}")
+    private long timeoutInvioMs;
+
+    @Value("${prenotazioni.sse.max-client:1000}")
+    private int maxClient;
+
+    @Autowired
+    private StatoAuleService statoAuleService;
+
+    private final Set<Iscritto> iscritti = ConcurrentHashMap.newKeySet();
+
+    // Iscrizioni e variazioni passano da qui in ordine: nessuna variazione cade tra l'istantanea e l'iscrizione
+    private final Object pubblicazione = new Object();
+
+    private static final int THREAD_INVIO = 4;
+
+    // Dimensione modificata solo in compensa (thread in più per gli invii bloccati)
+    private final ThreadPoolExecutor invio = new ThreadPoolExecutor(THREAD_INVIO, THREAD_INVIO, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "sse-stato-aule");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private final AtomicLong eventiInviati = new AtomicLong();
+    private final AtomicLong clientLentiScollegati = new AtomicLong();
+
+    // Nuovo client: solo le aule del piano indicato e/o con gli id indicati (null/vuoto = tutte).
+    // Restituisce null se è già stato raggiunto il numero massimo di client.
+    public SseEmitter iscrivi(Integer piano, List<Long> aulaIds) {
+        if (iscritti.size() >= maxClient) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(0L); // Nessun timeout: i client scollegati emergono dal heartbeat
+        Iscritto iscritto = new Iscritto(emitter, piano, aulaIds == null || aulaIds.isEmpty() ? null : Set.copyOf(aulaIds));
+        emitter.onCompletion(() -> iscritti.remove(iscritto));
+        emitter.onTimeout(() -> iscritti.remove(iscritto));
+        emitter.onError(e -> iscritti.remove(iscritto));
+        synchronized (pubblicazione) {
+            // L'istantanea letta qui è già quella delle variazioni notificate finora; le successive arrivano
+            // a onCambiamenti dopo l'iscrizione
+            List<StatoAula> iniziale = new ArrayList<>();
+            for (StatoAula stato : statoAuleService.getIstantanea().aule().values()) {
+                if (iscritto.interessa(stato)) {
+                    iniziale.add(stato);
+                }
+            }
+            iscritto.accodaIstantanea(iniziale);
+            iscritti.add(iscritto);
+        }
+        return emitter;
+    }
+
+    @EventListener
+    public void onCambiamenti(StatoAuleService.Cambiamenti cambiamenti) {
+        synchronized (pubblicazione) {
+            for (Iscritto iscritto : iscritti) {
+                iscritto.accodaStati(cambiamenti.aule());
+            }
+        }
+    }
+
+    // Commento periodico: mantiene aperte le connessioni attraverso i proxy e fa emergere i client scollegati
+    @Scheduled(fixedRateString = "${prenotazioni.sse.heartbeat-ms:30000}")
+    public void heartbeat() {
+        for (Iscritto iscritto : iscritti) {
+            iscritto.accodaPing();
+        }
+    }
+
+    // Scollega i client fermi in un invio da più di timeoutInvioMs. L'invio bloccato non può essere interrotto
+    // (la scrittura del connettore ignora le interruzioni), quindi il suo thread viene compensato nel pool
+    @Scheduled(fixedRate = 1000)
+    public void scollegaBloccati() {
+        long adesso = System.nanoTime();
+        for (Iscritto iscritto : iscritti) {
+            long bloccatoDa = iscritto.bloccatoDa;
+            if (bloccatoDa != 0 && adesso - bloccatoDa > TimeUnit.MILLISECONDS.toNanos(timeoutInvioMs)) {
+                iscritto.scollegaBloccato();
+            }
+        }
+    }
+
+    // +1 quando un invio viene dichiarato bloccato, -1 quando quell'invio termina
+    private synchronized void compensa(int thread) {
+        if (thread > 0) {
+            invio.setMaximumPoolSize(invio.getMaximumPoolSize() + thread);
+            invio.setCorePoolSize(invio.getCorePoolSize() + thread);
+        } else {
+            invio.setCorePoolSize(invio.getCorePoolSize() + thread);
+            invio.setMaximumPoolSize(invio.getMaximumPoolSize() + thread);
+        }
+    }
+
+    public Map<String, Object> getStatistiche() {
+        Map<String, Object> statistiche = new LinkedHashMap<>();
+        statistiche.put("client", iscritti.size());
+        statistiche.put("maxClient", maxClient);
+        statistiche.put("timeoutInvioMs", timeoutInvioMs);
+        statistiche.put("eventiInviati", eventiInviati.get());
+        statistiche.put("clientLentiScollegati", clientLentiScollegati.get());
+        return statistiche;
+    }
+
+    @PreDestroy
+    public void chiudi() {
+        for (Iscritto iscritto : iscritti) {
+            iscritto.emitter.complete();
+        }
+        invio.shutdownNow();
+    }
+
+    private class Iscritto {
+        private final SseEmitter emitter;
+        private final Integer piano;
+        private final Set<Long> aulaIds;
+
+        // Da inviare (accesso solo in synchronized su this): istantanea, ultimo stato per aula, heartbeat
+        private List<StatoAula> istantanea;
+        private final Map<Long, StatoAula> statiInSospeso = new LinkedHashMap<>();
+        private boolean ping;
+        private boolean inInvio;
+
+        // Inizio (System.nanoTime) dell'invio in corso, 0 se nessun invio è in corso
+        private volatile long bloccatoDa;
+        private volatile boolean scollegato;
+        private boolean compensato; // Accesso solo in synchronized su this
+
+        Iscritto(SseEmitter emitter, Integer piano, Set<Long> aulaIds) {
+            this.emitter = emitter;
+            this.piano = piano;
+            this.aulaIds = aulaIds;
+        }
+
+        boolean interessa(StatoAula stato) {
+            return (piano == null || piano == stato.piano()) && (aulaIds == null || aulaIds.contains(stato.aulaId()));
+        }
+
+        synchronized void accodaIstantanea(List<StatoAula> aule) {
+            istantanea = aule;
+            avviaInvio();
+        }
+
+        // Uno stato più recente sostituisce quello ancora in sospeso per la stessa aula
+        synchronized void accodaStati(List<StatoAula> aule) {
+            boolean aggiunti = false;
+            for (StatoAula stato : aule) {
+                if (interessa(stato)) {
+                    statiInSospeso.remove(stato.aulaId()); // In coda all'ordine di invio
+                    statiInSospeso.put(stato.aulaId(), stato);
+                    aggiunti = true;
+                }
+            }
+            if (aggiunti) {
+                avviaInvio();
+            }
+        }
+
+        synchronized void accodaPing() {
+            ping = true;
+            avviaInvio();
+        }
+
+        private void avviaInvio() {
+            if (!inInvio) {
+                inInvio = true;
+                invio.execute(this::svuota);
+            }
+        }
+
+        // Un solo svuotamento alla volta per client, così gli eventi restano in ordine
+        private void svuota() {
+            while (true) {
+                List<SseEmitter.SseEventBuilder> eventi = new ArrayList<>();
+                synchronized (this) {
+                    if (scollegato) {
+                        break;
+                    }
+                    if (istantanea != null) {
+                        eventi.add(SseEmitter.event().name("snapshot").data(istantanea));
+                        istantanea = null;
+                    }
+                    for (StatoAula stato : statiInSospeso.values()) {
+                        eventi.add(SseEmitter.event().name("stato").data(stato));
+                    }
+                    statiInSospeso.clear();
+                    if (ping) {
+                        eventi.add(SseEmitter.event().comment("ping"));
+                        ping = false;
+                    }
+                    if (eventi.isEmpty()) {
+                        inInvio = false;
+                        return;
+                    }
+                }
+                for (SseEmitter.SseEventBuilder evento : eventi) {
+                    if (scollegato || !invia(evento)) {
+                        chiudiDopoBlocco();
+                        return;
+                    }
+                }
+            }
+            chiudiDopoBlocco();
+        }
+
+        private boolean invia(SseEmitter.SseEventBuilder evento) {
+            bloccatoDa = System.nanoTime();
+            try {
+                emitter.send(evento);
+                eventiInviati.incrementAndGet();
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                iscritti.remove(this); // Connessione chiusa dal client
+                emitter.completeWithError(e);
+                return false;
+            } finally {
+                bloccatoDa = 0;
+            }
+        }
+
+        // Chiamato dal controllo periodico mentre il thread di invio è ancora fermo in send: il client non
+        // riceve altri eventi e il pool ha un thread in più finché l'invio non termina
+        void scollegaBloccato() {
+            if (!iscritti.remove(this)) {
+                return;
+            }
+            scollegato = true;
+            clientLentiScollegati.incrementAndGet();
+            System.out.println("🐢 Client SSE scollegato: invio bloccato da più di " + timeoutInvioMs + " ms");
+            boolean inCorso;
+            synchronized (this) {
+                inCorso = inInvio;
+                compensato = inCorso;
+            }
+            if (inCorso) {
+                compensa(1); // La risposta viene chiusa dal thread di invio (chiudiDopoBlocco)
+            } else {
+                emitter.complete(); // L'invio è terminato nel frattempo
+            }
+        }
+
+        // Nel thread di invio, terminato l'invio rimasto bloccato o fallito: chiude la risposta e restituisce
+        // il thread compensato
+        private void chiudiDopoBlocco() {
+            boolean restituisci;
+            synchronized (this) {
+                statiInSospeso.clear();
+                restituisci = compensato;
+                compensato = false;
+            }
+            if (scollegato) {
+                emitter.complete();
+            }
+            if (restituisci) {
+                compensa(-1);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.repository.VersioniRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.Map;
+
+// ETag forti per le letture di aule e prenotazioni, costruiti dalle versioni salvate sul database
+// (VersioniRepository): prenotazioni, aule, utenti. Ogni modifica incrementa la sua versione nella stessa
+// transazione, quindi tutte le istanze producono lo stesso ETag per gli stessi dati e una modifica fatta
+// su un'istanza invalida subito anche le risposte delle altre. Le versioni vengono lette prima dei dati:
+// un ETag non può mai indicare dati più recenti di quelli inviati con la risposta.
+@Service
+public class VersioniDati {
+
+    @Autowired
+    private AulaService aulaService;
+
+    @Autowired
+    private VersioniRepository versioniRepository;
+
+    // Le viste che dipendono dall'ora attuale (stato temporale, prossime 2 ore, finestra da oggi)
+    // cambiano ETag almeno a ogni intervallo
+    @Value("${prenotazioni.etag.intervallo-secondi:60}")
+    private long intervalloSecondi;
+
+    // Elenchi e filtri delle aule, serviti dal catalogo in memoria: la sua versione è quella del database
+    // da cui è stato letto, quindi un'istanza non ancora allineata non risponde 304 a chi ha dati più recenti
+    public String etagCatalogo() {
+        return "c" + aulaService.getVersioneCatalogo();
+    }
+
+    // Viste delle prenotazioni con aula e solo username o nome dell'utente (elenchi sintetici, /detailed):
+    // un login non le invalida
+    public String etagPrenotazioni(boolean dipendeDallOra) {
+        return etag(VersioniRepository.ANAGRAFICA, "-n", dipendeDallOra);
+    }
+
+    // Viste delle prenotazioni con l'utente completo (PrenotazioneDettaglio, che contiene anche l'ultimo accesso)
+    public String etagDettagli(boolean dipendeDallOra) {
+        return etag(VersioniRepository.UTENTI, "-u", dipendeDallOra);
+    }
+
+    // Viste che prendono le aule dal catalogo in memoria e le prenotazioni dal database
+    public String conCatalogo(String etag) {
+        return etagCatalogo() + "-" + etag;
+    }
+
+    private String etag(String utenti, String prefissoUtenti, boolean dipendeDallOra) {
+        Map<String, Long> versioni = versioniRepository.leggi();
+        String etag = "p" + versioni.get(VersioniRepository.PRENOTAZIONI)
+            + "-a" + versioni.get(VersioniRepository.AULE)
+            + prefissoUtenti + versioni.get(utenti);
+        if (dipendeDallOra) {
+            etag += "-t" + System.currentTimeMillis() / (intervalloSecondi * 1000);
+        }
+        return etag;
+    }
+
+    // true se il client ha già questa versione (If-None-Match): la risposta 304 è già pronta e il controller
+    // restituisce null senza leggere né serializzare nulla. Altrimenti imposta l'ETag sulla risposta.
+    // no-cache: il client può conservare la risposta ma deve sempre rivalidarla
+    public boolean nonModificato(ServletWebRequest request, String etag) {
+        request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        return request.checkNotModified(etag);
+    }
+}
@@ -0,0 +1,47 @@
+-- Schema iniziale, come creato finora da Hibernate (ddl-auto=update) su MySQL.
+-- I database già esistenti vengono registrati a questa versione senza eseguirla (baseline).
+
+create table aula (
+    id bigint not null auto_increment,
+    nome varchar(255),
+    capienza integer not null,
+    piano integer not null,
+    is_virtual bit not null,
+    primary key (id)
+) engine=InnoDB;
+
+create table corso (
+    id bigint not null auto_increment,
+    nome varchar(255),
+    docente varchar(255),
+    primary key (id)
+) engine=InnoDB;
+
+create table utente (
+    id bigint not null auto_increment,
+    username varchar(255),
+    nome varchar(255),
+    email varchar(255),
+    ruolo varchar(255),
+    password varchar(255),
+    data_registrazione datetime(6) not null,
+    ultimo_accesso datetime(6),
+    primary key (id)
+) engine=InnoDB;
+
+create table prenotazione (
+    id bigint not null auto_increment,
+    aula_id bigint not null,
+    corso_id bigint,
+    utente_id bigint not null,
+    inizio datetime(6) not null,
+    fine datetime(6) not null,
+    stato enum ('PRENOTATA','BLOCCATA','MANUTENZIONE','ANNULLATA') not null,
+    descrizione varchar(500),
+    data_creazione datetime(6) not null,
+    primary key (id)
+) engine=InnoDB;
+
+alter table prenotazione add constraint fk_prenotazione_aula foreign key (aula_id) references aula (id);
+alter table prenotazione add constraint fk_prenotazione_corso foreign key (corso_id) references corso (id);
+alter table prenotazione add constraint fk_prenotazione_utente foreign key (utente_id) references utente (id);
@@ -0,0 +1,12 @@
+-- Riepilogo giornaliero di occupazione (OccupazioneGiornaliera). "if not exists": nei database già
+-- aggiornati da Hibernate la tabella può esistere già. Dopo la creazione va popolata con
+-- POST /api/admin/rollup/rebuild.
+
+create table if not exists occupazione_giornaliera (
+    aula_id bigint not null,
+    giorno date not null,
+    stato enum ('PRENOTATA','BLOCCATA','MANUTENZIONE','ANNULLATA') not null,
+    minuti_prenotati bigint not null,
+    numero_prenotazioni integer not null,
+    primary key (aula_id, giorno, stato)
+) engine=InnoDB;
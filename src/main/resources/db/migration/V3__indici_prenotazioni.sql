@@ -0,0 +1,19 @@
+-- Indici per i percorsi di accesso delle query di PrenotazioneRepository.
+
+-- Sovrapposizioni e stato attuale per aula: aula_id = ? AND stato IN (...) AND inizio < ? AND fine > ?
+-- (fine è nell'indice, quindi le verifiche di esistenza non leggono le righe). Rende superfluo
+-- l'indice della chiave esterna su aula_id, che MySQL elimina da solo.
+create index idx_prenotazione_aula_stato_periodo on prenotazione (aula_id, stato, inizio, fine);
+
+-- Prenotazioni di un utente ordinate per inizio (findByUtenteId)
+create index idx_prenotazione_utente_inizio on prenotazione (utente_id, inizio);
+
+-- Prenotazioni per stato e prenotazioni future (findByStato, findPrenotazioniFuture)
+create index idx_prenotazione_stato_inizio on prenotazione (stato, inizio);
+
+-- Paginazione ed esportazioni di tutte le prenotazioni ordinate per (inizio, id): l'id è già
+-- incluso in ogni indice secondario di InnoDB
+create index idx_prenotazione_inizio on prenotazione (inizio);
+
+-- Totali per giorno di tutte le aule (la chiave primaria inizia con aula_id)
+create index idx_occupazione_giornaliera_giorno on occupazione_giornaliera (giorno);
@@ -0,0 +1,13 @@
+-- Il riepilogo conta ogni prenotazione solo nel giorno in cui inizia (prima veniva contata in ogni giorno
+-- toccato). I minuti non cambiano: si ricalcola il numero di prenotazioni e si eliminano le righe rimaste
+-- senza minuti né prenotazioni.
+
+update occupazione_giornaliera
+set numero_prenotazioni = (
+    select count(*) from prenotazione p
+    where p.aula_id = occupazione_giornaliera.aula_id
+      and p.stato = occupazione_giornaliera.stato
+      and cast(p.inizio as date) = occupazione_giornaliera.giorno
+);
+
+delete from occupazione_giornaliera where numero_prenotazioni = 0 and minuti_prenotati = 0;
@@ -0,0 +1,15 @@
+-- Versioni dei dati usate per gli ETag (VersioniDati), condivise da tutte le istanze: ogni modifica incrementa
+-- la sua versione nella stessa transazione, quindi una versione è visibile esattamente quando lo sono i dati.
+
+-- Prenotazioni: un contatore per aula, sulla riga che ogni prenotazione blocca già (nessun lock in più).
+-- La versione delle prenotazioni è la somma dei contatori. Colonna non mappata dall'entità Aula
+alter table aula add column versione_prenotazioni bigint not null default 0;
+
+-- Aule e utenti cambiano di rado: un contatore globale ciascuno
+create table versione_dati (
+    nome varchar(32) not null,
+    valore bigint not null,
+    primary key (nome)
+) engine=InnoDB;
+
+insert into versione_dati (nome, valore) values ('aule', 0), ('utenti', 0), ('anagrafica', 0);
@@ -0,0 +1,42 @@
+package com.prenotazioni;
+
+import com.prenotazioni.model.Aula;
+import com.prenotazioni.model.Corso;
+import com.prenotazioni.model.Utente;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+// Entità di prova non ancora salvate, con i campi obbligatori già valorizzati: ogni test le salva con il
+// repository del proprio contesto (i test a due istanze ne hanno due) o le usa senza database
+public final class DatiDiProva {
+
+    private DatiDiProva() {
+    }
+
+    public static Aula aula(String nome) {
+        Aula aula = new Aula();
+        aula.setNome(nome);
+        aula.setCapienza(20);
+        return aula;
+    }
+
+    // Email derivata dallo username. La data di registrazione ha la precisione della colonna (microsecondi),
+    // così l'entità salvata e quella riletta dal database coincidono
+    public static Utente utente(String username, String ruolo) {
+        Utente utente = new Utente();
+        utente.setUsername(username);
+        utente.setNome(username);
+        utente.setEmail(username + "@example.org");
+        utente.setRuolo(ruolo);
+        utente.setDataRegistrazione(LocalDateTime.now().truncatedTo(ChronoUnit.MICROS));
+        return utente;
+    }
+
+    public static Corso corso(String nome) {
+        Corso corso = new Corso();
+        corso.setNome(nome);
+        corso.setDocente("Docente di " + nome);
+        return corso;
+    }
+}
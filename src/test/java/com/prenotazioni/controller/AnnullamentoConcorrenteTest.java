@@ -0,0 +1,102 @@
+package com.prenotazioni.controller;
+
+import com.prenotazioni.DatiDiProva;
+import com.prenotazioni.dto.TotaleOccupazioneAula;
+import com.prenotazioni.model.Prenotazione;
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+import com.prenotazioni.model.Utente;
+import com.prenotazioni.repository.AulaRepository;
+import com.prenotazioni.repository.UtenteRepository;
+import com.prenotazioni.service.JwtService;
+import com.prenotazioni.service.OccupazioneGiornalieraService;
+import com.prenotazioni.service.PrenotazioneService;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+
+// Due DELETE concorrenti sulla stessa prenotazione (doppio clic, utente e admin) passando da MockMvc, quindi
+// con open-in-view attivo: il riepilogo giornaliero deve registrare un solo annullamento per prenotazione
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class AnnullamentoConcorrenteTest {
+
+    private static final int PRENOTAZIONI = 20;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private OccupazioneGiornalieraService occupazioneService;
+
+    @Autowired
+    private AulaRepository aulaRepository;
+
+    @Autowired
+    private UtenteRepository utenteRepository;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Test
+    void annullamentiConcorrentiContatiUnaVolta() throws Exception {
+        Long aulaId = aulaRepository.save(DatiDiProva.aula("Annullamenti concorrenti")).getId();
+        Utente utente = utenteRepository.save(DatiDiProva.utente("annullamenti", "user"));
+        String token = "Bearer " + jwtService.generateToken(utente);
+
+        LocalDate primoGiorno = LocalDate.now().plusDays(150);
+        ExecutorService esecutore = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < PRENOTAZIONI; i++) {
+                LocalDateTime inizio = primoGiorno.plusDays(i).atTime(10, 0);
+                Prenotazione prenotazione = prenotazioneService.prenotaAula(aulaId, null, utente.getId(),
+                    inizio, inizio.plusHours(1), "doppio clic");
+                assertNotNull(prenotazione);
+
+                CyclicBarrier partenza = new CyclicBarrier(2);
+                List<Future<?>> richieste = new ArrayList<>();
+                for (int r = 0; r < 2; r++) {
+                    richieste.add(esecutore.submit(() -> {
+                        partenza.await();
+                        return mockMvc.perform(delete("/api/prenotazioni/" + prenotazione.getId())
+                            .header(HttpHeaders.AUTHORIZATION, token)).andReturn().getResponse().getStatus();
+                    }));
+                }
+                for (Future<?> richiesta : richieste) {
+                    assertEquals(200, richiesta.get());
+                }
+            }
+        } finally {
+            esecutore.shutdownNow();
+        }
+
+        @SuppressWarnings("unchecked")
+        List<TotaleOccupazioneAula> aule = (List<TotaleOccupazioneAula>) occupazioneService.getRiepilogo(
+            primoGiorno.atStartOfDay(), primoGiorno.plusDays(PRENOTAZIONI).atStartOfDay(), aulaId).get("aule");
+        assertEquals(1, aule.size(), "solo righe ANNULLATA: " + aule);
+        assertEquals(StatoPrenotazione.ANNULLATA, aule.get(0).stato());
+        assertEquals((long) PRENOTAZIONI, aule.get(0).prenotazioni());
+        assertEquals(PRENOTAZIONI * 60L, aule.get(0).minutiPrenotati());
+    }
+}
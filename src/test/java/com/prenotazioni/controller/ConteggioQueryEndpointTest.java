@@ -0,0 +1,126 @@
+package com.prenotazioni.controller;
+
+import com.prenotazioni.DatiDiProva;
+import com.prenotazioni.dto.AulaRequest;
+import com.prenotazioni.model.Corso;
+import com.prenotazioni.model.Prenotazione;
+import com.prenotazioni.model.Utente;
+import com.prenotazioni.repository.CorsoRepository;
+import com.prenotazioni.repository.UtenteRepository;
+import com.prenotazioni.service.AulaService;
+import com.prenotazioni.service.JwtService;
+import com.prenotazioni.service.PrenotazioneService;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Numero di statement SQL ed entità caricate dal database per ogni endpoint di lettura, serializzazione
+// JSON compresa, con la cache di secondo livello vuota. Un'associazione LAZY letta fuori dal grafo di
+// fetch o una query per riga fanno cambiare i conteggi. Database dedicato: i dati sono sempre gli stessi.
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:conteggi;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ConteggioQueryEndpointTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AulaService aulaService;
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private UtenteRepository utenteRepository;
+
+    @Autowired
+    private CorsoRepository corsoRepository;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private String token;
+    private Long aulaId;
+    private Long prenotazioneId;
+
+    // 3 aule, 2 utenti, 2 corsi, 9 prenotazioni (una in corso per aula, due future)
+    @BeforeAll
+    void datiDiProva() {
+        Utente admin = nuovoUtente("admin.conteggi", "admin");
+        Utente docente = nuovoUtente("docente.conteggi", "user");
+        Corso[] corsi = { nuovoCorso("Analisi"), nuovoCorso("Fisica") };
+        LocalDateTime adesso = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+        for (int i = 0; i < 3; i++) {
+            Long id = aulaService.createAula(new AulaRequest("Conteggi " + i, 30, i)).getId();
+            Utente utente = i % 2 == 0 ? admin : docente;
+            Prenotazione inCorso = prenotazioneService.prenotaAula(id, corsi[i % 2].getId(), utente.getId(),
+                adesso.minusMinutes(10), adesso.plusHours(1), "in corso");
+            prenotazioneService.prenotaAula(id, corsi[0].getId(), docente.getId(), adesso.plusDays(1), adesso.plusDays(1).plusHours(2), "domani");
+            prenotazioneService.prenotaAula(id, null, admin.getId(), adesso.plusDays(2), adesso.plusDays(2).plusHours(2), "dopodomani");
+            if (i == 0) {
+                aulaId = id;
+                prenotazioneId = inCorso.getId();
+            }
+        }
+        token = jwtService.generateToken(admin);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+        // endpoint,                                 statement, entità caricate
+        "/api/prenotazioni,                          1, 16",
+        "/api/prenotazioni/mie,                      1, 10",
+        "/api/prenotazioni/future,                   1, 12",
+        "/api/prenotazioni/stato/PRENOTATA,          1, 16",
+        "/api/prenotazioni/{prenotazione},           1, 4",
+        "/api/prenotazioni/{prenotazione}/details,   2, 4",
+        "/api/prenotazioni/all-details,              1, 0",
+        "/api/rooms/details,                         1, 0",
+        "/api/rooms/{aula}/details,                  1, 0",
+        "/api/rooms/detailed,                        2, 16",
+        "/api/rooms/{aula}/detailed,                 2, 7",
+    })
+    void queryPerEndpoint(String endpoint, long statement, long entitaCaricate) throws Exception {
+        String url = endpoint.replace("{aula}", aulaId.toString()).replace("{prenotazione}", prenotazioneId.toString());
+        entityManagerFactory.getCache().evictAll();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        mockMvc.perform(get(url).header(HttpHeaders.AUTHORIZATION, "Bearer " + token)).andExpect(status().isOk());
+
+        assertEquals(statement, statistics.getPrepareStatementCount(), "statement SQL");
+        assertEquals(entitaCaricate, statistics.getEntityLoadCount(), "entità caricate");
+        assertEquals(0, statistics.getEntityFetchCount(), "caricamenti LAZY separati");
+    }
+
+    private Utente nuovoUtente(String username, String ruolo) {
+        return utenteRepository.save(DatiDiProva.utente(username, ruolo));
+    }
+
+    private Corso nuovoCorso(String nome) {
+        return corsoRepository.save(DatiDiProva.corso(nome));
+    }
+}
@@ -0,0 +1,103 @@
+package com.prenotazioni.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prenotazioni.DatiDiProva;
+import com.prenotazioni.model.Aula;
+import com.prenotazioni.model.Corso;
+import com.prenotazioni.model.Prenotazione;
+import com.prenotazioni.model.Utente;
+import com.prenotazioni.repository.AulaRepository;
+import com.prenotazioni.repository.CorsoRepository;
+import com.prenotazioni.repository.PrenotazioneRepository;
+import com.prenotazioni.repository.UtenteRepository;
+import com.prenotazioni.service.PrenotazioneService;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// La riga di dettaglio costruita dalla query (constructor expression di PrenotazioneRepository) produce lo
+// stesso JSON della vecchia HashMap con 21 chiavi riempita dalle entità salvate: stesse chiavi e valori
+// (l'ordine delle chiavi non conta). Le allocazioni dei due formati sono misurate dal benchmark JMH
+// PrenotazioneDettaglioBenchmark (profilo Maven benchmark), non nei test
+@SpringBootTest
+@ActiveProfiles("test")
+class PrenotazioneDettaglioJsonTest {
+
+    @Autowired
+    private PrenotazioneRepository prenotazioneRepository;
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private AulaRepository aulaRepository;
+
+    @Autowired
+    private UtenteRepository utenteRepository;
+
+    @Autowired
+    private CorsoRepository corsoRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void stessiCampiEValoriDellaMappa() throws Exception {
+        Aula aula = aulaRepository.save(DatiDiProva.aula("Dettaglio"));
+        Utente utente = utenteRepository.save(DatiDiProva.utente("dettaglio", "user"));
+        Corso corso = corsoRepository.save(DatiDiProva.corso("Analisi"));
+        LocalDateTime inizio = LocalDate.now().plusDays(150).atTime(9, 0);
+        Prenotazione prenotazione = prenotazioneService.prenotaAula(aula.getId(), corso.getId(), utente.getId(),
+            inizio, inizio.plusHours(2), "lezione");
+        assertNotNull(prenotazione);
+
+        // Riletta dal database: dataCreazione con la precisione della colonna
+        prenotazione = prenotazioneRepository.findById(prenotazione.getId()).orElseThrow();
+
+        List<PrenotazioneDettaglio> righe = prenotazioneRepository.findCompleteDetailsByPrenotazioneId(prenotazione.getId());
+        assertEquals(1, righe.size());
+
+        JsonNode atteso = objectMapper.readTree(objectMapper.writeValueAsBytes(mappa(prenotazione, aula, utente, corso)));
+        JsonNode letto = objectMapper.readTree(objectMapper.writeValueAsBytes(righe.get(0)));
+        assertEquals(atteso, letto); // ObjectNode confronta le chiavi senza considerarne l'ordine
+    }
+
+    // La riga come veniva costruita prima del record
+    private static Map<String, Object> mappa(Prenotazione prenotazione, Aula aula, Utente utente, Corso corso) {
+        Map<String, Object> riga = new HashMap<>();
+        riga.put("prenotazioneId", prenotazione.getId());
+        riga.put("inizio", prenotazione.getInizio());
+        riga.put("fine", prenotazione.getFine());
+        riga.put("stato", prenotazione.getStato());
+        riga.put("notePrenotazione", prenotazione.getDescrizione());
+        riga.put("dataCreazione", prenotazione.getDataCreazione());
+        riga.put("aulaId", aula.getId());
+        riga.put("aulaNome", aula.getNome());
+        riga.put("aulaCapienza", aula.getCapienza());
+        riga.put("aulaPiano", aula.getPiano());
+        riga.put("utenteId", utente.getId());
+        riga.put("username", utente.getUsername());
+        riga.put("utenteNome", utente.getNome());
+        riga.put("email", utente.getEmail());
+        riga.put("ruolo", utente.getRuolo());
+        riga.put("utenteRegistrato", utente.getDataRegistrazione());
+        riga.put("ultimoAccesso", utente.getUltimoAccesso());
+        riga.put("corsoId", corso.getId());
+        riga.put("corsoNome", corso.getNome());
+        riga.put("docente", corso.getDocente());
+        riga.put("statoTemporale", "FUTURA");
+        return riga;
+    }
+}
@@ -0,0 +1,132 @@
+package com.prenotazioni.repository;
+
+import com.prenotazioni.dto.PrenotazioneDettaglio;
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationInfo;
+import org.flywaydb.core.api.MigrationState;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Le migrazioni di db/migration vengono applicate da zero (H2 in modalità MySQL, vedi application-test.properties)
+// e le query principali dei repository usano gli indici di V3 secondo il piano di esecuzione. Il piano è quello
+// dell'SQL generato da Hibernate per il metodo del repository (RegistroSql), non di una query scritta a mano
+@SpringBootTest
+@ActiveProfiles("test")
+class MigrazioniSchemaTest {
+
+    @Autowired
+    private Flyway flyway;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PrenotazioneRepository prenotazioneRepository;
+
+    @Autowired
+    private OccupazioneGiornalieraRepository occupazioneRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private static final LocalDateTime CURSORE = LocalDateTime.of(2030, 1, 1, 9, 0);
+
+    @Test
+    void migrazioniApplicate() {
+        MigrationInfo[] applicate = flyway.info().applied();
+        assertEquals(List.of("1", "2", "3", "4", "5"), Arrays.stream(applicate).map(m -> m.getVersion().getVersion()).toList());
+        for (MigrationInfo migrazione : applicate) {
+            assertEquals(MigrationState.SUCCESS, migrazione.getState(), migrazione.getScript());
+        }
+        assertEquals(0, flyway.info().pending().length);
+    }
+
+    // Verifica delle sovrapposizioni prima di ogni prenotazione e intervalli attivi per le serie
+    @Test
+    void sovrapposizioniUsanoIndiceAulaStatoPeriodo() {
+        LocalDateTime fine = CURSORE.plusHours(1);
+        String esiste = unicaQuery(() -> prenotazioneRepository.existsSovrapposizione(1L, CURSORE, fine));
+        assertUsaIndice("idx_prenotazione_aula_stato_periodo", esiste, 1L, fine, CURSORE);
+
+        String intervalli = unicaQuery(() -> prenotazioneRepository.findIntervalliAttiviByAulaAndPeriodo(1L, CURSORE, fine));
+        assertUsaIndice("idx_prenotazione_aula_stato_periodo", intervalli, 1L, fine, CURSORE);
+    }
+
+    // Ricerca per utente da un indice su utente_id: su MySQL idx_prenotazione_utente_inizio (l'indice della chiave
+    // esterna viene eliminato), H2 invece conserva l'indice della chiave esterna e sceglie quello
+    @Test
+    void prenotazioniUtenteUsanoIndiceUtente() {
+        String sql = unicaQuery(() -> prenotazioneRepository.findByUtenteId(1L));
+        assertUsaIndice(": utente_id = ?1", sql, 1L);
+    }
+
+    @Test
+    void prenotazioniPerStatoUsanoIndiceStatoInizio() {
+        String perStato = unicaQuery(() -> prenotazioneRepository.findByStato(StatoPrenotazione.BLOCCATA));
+        assertUsaIndice("idx_prenotazione_stato_inizio", perStato, StatoPrenotazione.BLOCCATA.name());
+
+        String future = unicaQuery(() -> prenotazioneRepository.findPrenotazioniFuture(CURSORE));
+        assertUsaIndice("idx_prenotazione_stato_inizio", future, CURSORE);
+    }
+
+    // Esportazione NDJSON: il periodo è sempre un intervallo dell'indice su inizio, anche senza filtri
+    @Test
+    void esportazioneUsaIndiceInizio() {
+        LocalDateTime fine = CURSORE.plusDays(30);
+        String sql = unicaQuery(() -> transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<PrenotazioneDettaglio> righe = prenotazioneRepository.streamCompleteDetails(CURSORE, fine, null, null)) {
+                righe.count();
+            }
+        }));
+        assertUsaIndice("idx_prenotazione_inizio", sql, fine, CURSORE, null, null, null, null);
+    }
+
+    @Test
+    void totaliPerGiornoUsanoIndiceGiorno() {
+        LocalDate da = CURSORE.toLocalDate();
+        String sql = unicaQuery(() -> occupazioneRepository.totaliPerGiorno(da, da.plusMonths(1), null));
+        assertUsaIndice("idx_occupazione_giornaliera_giorno", sql, da, da.plusMonths(1), null, null);
+    }
+
+    // Pagine successive alla prima (SQL generato dai repository): intervallo sull'indice di inizio che parte
+    // dal cursore, non una scansione della tabella. La prima pagina non ha condizioni: su MySQL è una
+    // lettura all'indietro dello stesso indice, H2 invece ordina la tabella e non viene verificata
+    @Test
+    void pagineSuccessiveUsanoIndiceInizio() {
+        String pagina = unicaQuery(() -> prenotazioneRepository.findPaginaDopo(CURSORE, 10L, Limit.of(21)));
+        assertUsaIndice("idx_prenotazione_inizio: inizio <= ?1", pagina, CURSORE, CURSORE, 10L, 0, 21);
+
+        String dettagli = unicaQuery(() -> prenotazioneRepository.findAllCompleteDetailsDopo(CURSORE, 10L, Limit.of(21)));
+        assertUsaIndice("idx_prenotazione_inizio: inizio <= ?1", dettagli, CURSORE, CURSORE, 10L, 0, 21);
+    }
+
+    private static String unicaQuery(Runnable operazione) {
+        List<String> sql = RegistroSql.registra(operazione);
+        assertEquals(1, sql.size(), sql.toString());
+        return sql.get(0);
+    }
+
+    // Il piano di H2 per la query, con i parametri nell'ordine in cui compaiono (Limit aggiunge offset e
+    // numero di righe), contiene l'indice indicato
+    private void assertUsaIndice(String indice, String query, Object... parametri) {
+        assertEquals(query.chars().filter(c -> c == '?').count(), parametri.length, query);
+        String piano = jdbcTemplate.queryForObject("EXPLAIN " + query, String.class, parametri).toLowerCase();
+        assertTrue(piano.contains(indice), piano);
+    }
+}
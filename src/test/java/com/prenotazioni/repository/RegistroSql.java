@@ -0,0 +1,35 @@
+package com.prenotazioni.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Registra l'SQL generato da Hibernate per le query eseguite dentro registra(), così i test possono
+// verificare il piano delle query vere dei repository (vedi MigrazioniSchemaTest). Attivato nel profilo
+// di test da hibernate.session_factory.statement_inspector; fuori da registra() non fa nulla.
+public class RegistroSql implements StatementInspector {
+
+    private static final ThreadLocal<List<String>> REGISTRATE = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        List<String> registrate = REGISTRATE.get();
+        if (registrate != null) {
+            registrate.add(sql);
+        }
+        return sql;
+    }
+
+    // SQL di tutti gli statement eseguiti dall'operazione sul thread corrente, nell'ordine
+    public static List<String> registra(Runnable operazione) {
+        List<String> registrate = new ArrayList<>();
+        REGISTRATE.set(registrate);
+        try {
+            operazione.run();
+        } finally {
+            REGISTRATE.remove();
+        }
+        return registrate;
+    }
+}
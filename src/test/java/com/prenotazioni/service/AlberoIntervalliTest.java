@@ -0,0 +1,54 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.dto.IntervalloPrenotazione;
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AlberoIntervalliTest {
+
+    private static final LocalDateTime ORIGINE = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    // Confronto con la ricerca lineare su intervalli brevi, sovrapposti e lunghissimi (blocchi di mesi),
+    // con inserimenti e rimozioni alternati
+    @Test
+    void stessiRisultatiDellaRicercaLineare() {
+        Random random = new Random(42);
+        AlberoIntervalli albero = new AlberoIntervalli();
+        List<IntervalloPrenotazione> presenti = new ArrayList<>();
+        for (long id = 1; id <= 5000; id++) {
+            if (!presenti.isEmpty() && random.nextInt(3) == 0) {
+                albero.rimuovi(presenti.remove(random.nextInt(presenti.size())));
+            }
+            long durata = random.nextInt(50) == 0 ? 60L * 24 * 90 : 30 + random.nextInt(180);
+            LocalDateTime inizio = ORIGINE.plusMinutes(random.nextInt(60 * 24 * 365));
+            IntervalloPrenotazione intervallo = new IntervalloPrenotazione(id, 1L, inizio, inizio.plusMinutes(durata),
+                StatoPrenotazione.PRENOTATA);
+            albero.aggiungi(intervallo);
+            presenti.add(intervallo);
+
+            if (id % 10 == 0) {
+                LocalDateTime da = ORIGINE.plusMinutes(random.nextInt(60 * 24 * 365));
+                LocalDateTime a = da.plusMinutes(1 + random.nextInt(600));
+                List<IntervalloPrenotazione> attese = presenti.stream()
+                    .filter(i -> i.siSovrappone(da, a))
+                    .sorted(Comparator.comparing(IntervalloPrenotazione::inizio).thenComparing(IntervalloPrenotazione::id))
+                    .toList();
+                List<IntervalloPrenotazione> trovate = new ArrayList<>();
+                albero.sovrapposizioni(da, a, trovate);
+                assertEquals(attese, trovate);
+                assertEquals(!attese.isEmpty(), albero.haSovrapposizioni(da, a));
+                assertEquals(presenti.stream().map(IntervalloPrenotazione::inizio).filter(i -> i.isAfter(da))
+                    .min(Comparator.naturalOrder()).orElse(null), albero.prossimoInizio(da));
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.DatiDiProva;
+import com.prenotazioni.dto.AulaRequest;
+import com.prenotazioni.dto.FinestraTemporale;
+import com.prenotazioni.dto.RoomDetailsResponse;
+import com.prenotazioni.model.Aula;
+import com.prenotazioni.repository.UtenteRepository;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Le viste di dettaglio delle aule eseguono lo stesso numero di query per una sola aula e per tutte:
+// una per le prenotazioni attive (stato) e una per quelle della finestra, con aula, utente e corso in JOIN FETCH
+@SpringBootTest
+@ActiveProfiles("test")
+class AulaServiceQueryTest {
+
+    private static final long QUERY_DETTAGLI = 2;
+
+    @Autowired
+    private AulaService aulaService;
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private UtenteRepository utenteRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void stesseQueryPerUnaAulaEPerTutte() {
+        Long utenteId = utenteRepository.save(DatiDiProva.utente("dettagli", "user")).getId();
+
+        LocalDateTime adesso = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+        List<Aula> aule = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Aula aula = aulaService.createAula(new AulaRequest("Dettagli " + i, 40, 3));
+            aule.add(aula);
+            // Una prenotazione in corso (stato e currentBooking) e due nella finestra
+            prenotazioneService.prenotaAula(aula.getId(), null, utenteId, adesso.minusMinutes(10), adesso.plusHours(1), "in corso");
+            prenotazioneService.prenotaAula(aula.getId(), null, utenteId, adesso.plusDays(1), adesso.plusDays(1).plusHours(2), "domani");
+            prenotazioneService.prenotaAula(aula.getId(), null, utenteId, adesso.plusDays(2), adesso.plusDays(2).plusHours(2), "dopodomani");
+        }
+        FinestraTemporale finestra = FinestraTemporale.daParametri(null, null, null);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        RoomDetailsResponse una = aulaService.getRoomWithDetails(aule.get(0).getId(), finestra);
+        assertNotNull(una);
+        assertEquals(QUERY_DETTAGLI, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityFetchCount());
+
+        statistics.clear();
+        List<RoomDetailsResponse> tutte = aulaService.getAllRoomsWithDetails(finestra);
+        assertTrue(tutte.size() >= aule.size());
+        assertEquals(QUERY_DETTAGLI, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityFetchCount());
+    }
+}
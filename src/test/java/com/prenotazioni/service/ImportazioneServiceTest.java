@@ -0,0 +1,118 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.DatiDiProva;
+import com.prenotazioni.dto.EsitoImportazione;
+import com.prenotazioni.model.Aula;
+import com.prenotazioni.repository.AulaRepository;
+import com.prenotazioni.repository.UtenteRepository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class ImportazioneServiceTest {
+
+    @Autowired
+    private ImportazioneService importazioneService;
+
+    @Autowired
+    private DisponibilitaIndex disponibilitaIndex;
+
+    @Autowired
+    private AulaRepository aulaRepository;
+
+    @Autowired
+    private UtenteRepository utenteRepository;
+
+    // Il file si interrompe dopo un blocco già salvato: le prenotazioni salvate devono comparire nell'indice
+    @Test
+    void indiceRiallineatoAncheSeLImportazioneSiInterrompe() {
+        Long aulaId = nuovaAula("Importazione interrotta").getId();
+        Long adminId = nuovoAdmin("admin.importazione");
+
+        LocalDateTime primo = LocalDate.now().plusDays(120).atTime(0, 0);
+        StringBuilder csv = new StringBuilder("aula,corso,inizio,fine,descrizione\n");
+        for (int i = 0; i < 1000; i++) { // Un blocco intero, salvato prima dell'errore
+            LocalDateTime inizio = primo.plusHours(i);
+            csv.append(aulaId).append(",,").append(inizio).append(',').append(inizio.plusMinutes(30)).append(",import\n");
+        }
+        InputStream interrotto = new SequenceInputStream(
+            new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)),
+            new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw new IOException("Connessione interrotta");
+                }
+            });
+
+        assertThrows(IOException.class, () -> importazioneService.importaCsv(interrotto, adminId));
+
+        assertFalse(disponibilitaIndex.isLibera(aulaId, primo, primo.plusMinutes(30)));
+        assertFalse(disponibilitaIndex.isLibera(aulaId, primo.plusHours(999), primo.plusHours(999).plusMinutes(30)));
+    }
+
+    // Senza intestazione la prima riga è un dato anche se l'aula si chiama "Aula ..."; un valore numerico è un id
+    // anche se un'altra aula ha quel numero come nome; un'aula senza nome non blocca l'importazione
+    @Test
+    void primaRigaEAuleRisolteSenzaAmbiguita() throws IOException {
+        Aula perNome = nuovaAula("Aula Import 1");
+        Aula perId = nuovaAula("Importazione per id");
+        Aula omonima = nuovaAula(String.valueOf(perId.getId()));
+        Aula senzaNome = nuovaAula(null);
+        Long adminId = nuovoAdmin("admin.importazione.nomi");
+        try {
+            LocalDateTime inizio = LocalDate.now().plusDays(130).atTime(9, 0);
+            String csv = "Aula Import 1,," + inizio + "," + inizio.plusHours(1) + ",prima riga\n"
+                + perId.getId() + ",," + inizio + "," + inizio.plusHours(1) + ",per id\n";
+
+            EsitoImportazione esito = importazioneService.importaCsv(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), adminId);
+
+            assertEquals(2, esito.getRigheLette());
+            assertEquals(2, esito.getImportate());
+            assertFalse(disponibilitaIndex.isLibera(perNome.getId(), inizio, inizio.plusHours(1)));
+            assertFalse(disponibilitaIndex.isLibera(perId.getId(), inizio, inizio.plusHours(1)));
+            assertTrue(disponibilitaIndex.isLibera(omonima.getId(), inizio, inizio.plusHours(1)));
+        } finally {
+            aulaRepository.delete(senzaNome);
+        }
+    }
+
+    @Test
+    void intestazioneRiconosciutaDaiNomiDelleColonne() throws IOException {
+        Aula aula = nuovaAula("Importazione intestazione");
+        LocalDateTime inizio = LocalDate.now().plusDays(131).atTime(9, 0);
+        String csv = "Aula, Corso, Inizio, Fine, Descrizione\n"
+            + aula.getId() + ",," + inizio + "," + inizio.plusHours(1) + ",dopo l'intestazione\n";
+
+        EsitoImportazione esito = importazioneService.importaCsv(
+            new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), nuovoAdmin("admin.importazione.intestazione"));
+
+        assertEquals(1, esito.getRigheLette());
+        assertEquals(1, esito.getImportate());
+    }
+
+    private Aula nuovaAula(String nome) {
+        return aulaRepository.save(DatiDiProva.aula(nome));
+    }
+
+    private Long nuovoAdmin(String username) {
+        return utenteRepository.save(DatiDiProva.utente(username, "admin")).getId();
+    }
+}
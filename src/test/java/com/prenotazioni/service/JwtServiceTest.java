@@ -0,0 +1,43 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.DatiDiProva;
+import com.prenotazioni.model.Utente;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class JwtServiceTest {
+
+    @Autowired
+    private JwtService jwtService;
+
+    // Prima verifica dalla firma, poi dalla cache; un token alterato non viene mai servito dalla cache
+    @Test
+    void tokenVerificatoServitoDallaCache() {
+        Utente utente = DatiDiProva.utente("jwt", "user");
+        utente.setId(42L);
+        String token = jwtService.generateToken(utente);
+        Map<String, Object> prima = jwtService.getStatisticheCache();
+
+        JwtPrincipal verificato = jwtService.parseToken(token);
+        JwtPrincipal dallaCache = jwtService.parseToken(token);
+        assertNull(jwtService.parseToken(token.substring(0, token.length() - 2) + "xx"));
+
+        assertNotNull(verificato);
+        assertEquals(verificato, dallaCache);
+        assertEquals(42L, dallaCache.id());
+        Map<String, Object> dopo = jwtService.getStatisticheCache();
+        assertEquals(1L, (long) dopo.get("hits") - (long) prima.get("hits"));
+        assertEquals(2L, (long) dopo.get("misses") - (long) prima.get("misses"));
+    }
+}
@@ -0,0 +1,118 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.DatiDiProva;
+import com.prenotazioni.dto.TotaleOccupazioneAula;
+import com.prenotazioni.dto.TotaleOccupazioneGiorno;
+import com.prenotazioni.model.Aula;
+import com.prenotazioni.model.Prenotazione;
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+import com.prenotazioni.model.Utente;
+import com.prenotazioni.repository.AulaRepository;
+import com.prenotazioni.repository.UtenteRepository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class OccupazioneGiornalieraServiceTest {
+
+    @Autowired
+    private OccupazioneGiornalieraService occupazioneService;
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private AulaRepository aulaRepository;
+
+    @Autowired
+    private UtenteRepository utenteRepository;
+
+    // 23:00-01:00: 60 minuti per giorno, ma una sola prenotazione sul periodo e nessuna nel giorno dopo
+    @Test
+    void prenotazioneACavalloDellaMezzanotteContataUnaVolta() {
+        Long aulaId = nuovaAula("Notturna").getId();
+        Long utenteId = nuovoUtente("notturna").getId();
+        LocalDateTime inizio = LocalDate.now().plusDays(90).atTime(23, 0);
+        Prenotazione prenotazione = prenotazioneService.prenotaAula(aulaId, null, utenteId, inizio, inizio.plusHours(2), "notte");
+        assertNotNull(prenotazione);
+
+        verificaRiepilogo(aulaId, inizio);
+
+        // La ricostruzione da zero produce gli stessi totali dell'aggiornamento incrementale
+        occupazioneService.ricostruisci();
+        verificaRiepilogo(aulaId, inizio);
+
+        // Annullata: entrambe le righe PRENOTATA spariscono, anche quella con solo minuti
+        assertTrue(prenotazioneService.annullaPrenotazione(prenotazione.getId(), utenteId));
+        Map<String, Object> riepilogo = riepilogo(aulaId, inizio);
+        assertTrue(giorni(riepilogo).stream().noneMatch(r -> r.stato() == StatoPrenotazione.PRENOTATA));
+    }
+
+    // Un "to" con orario include il giorno parziale: prima veniva troncato alla mezzanotte ed escluso
+    @Test
+    void ultimoGiornoParzialeIncluso() {
+        Long aulaId = nuovaAula("Pomeriggio").getId();
+        Long utenteId = nuovoUtente("pomeriggio").getId();
+        LocalDateTime inizio = LocalDate.now().plusDays(91).atTime(14, 0);
+        assertNotNull(prenotazioneService.prenotaAula(aulaId, null, utenteId, inizio, inizio.plusHours(1), "pomeriggio"));
+
+        Map<String, Object> riepilogo = occupazioneService.getRiepilogo(inizio.toLocalDate().atStartOfDay(),
+            inizio.toLocalDate().atTime(10, 0), aulaId);
+
+        assertEquals(inizio.toLocalDate().plusDays(1), riepilogo.get("to"));
+        assertEquals(1, giorni(riepilogo).size());
+    }
+
+    private void verificaRiepilogo(Long aulaId, LocalDateTime inizio) {
+        Map<String, Object> riepilogo = riepilogo(aulaId, inizio);
+
+        List<TotaleOccupazioneAula> aule = aule(riepilogo);
+        assertEquals(1, aule.size());
+        assertEquals(120L, aule.get(0).minutiPrenotati());
+        assertEquals(1L, aule.get(0).prenotazioni());
+
+        List<TotaleOccupazioneGiorno> giorni = giorni(riepilogo);
+        assertEquals(2, giorni.size());
+        for (TotaleOccupazioneGiorno giorno : giorni) {
+            assertEquals(60L, giorno.minutiPrenotati());
+            boolean giornoDiInizio = inizio.toLocalDate().equals(giorno.giorno());
+            assertEquals(giornoDiInizio ? 1L : 0L, giorno.prenotazioni());
+        }
+    }
+
+    private Map<String, Object> riepilogo(Long aulaId, LocalDateTime inizio) {
+        return occupazioneService.getRiepilogo(inizio.toLocalDate().atStartOfDay(),
+            inizio.toLocalDate().plusDays(2).atStartOfDay(), aulaId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<TotaleOccupazioneAula> aule(Map<String, Object> riepilogo) {
+        return (List<TotaleOccupazioneAula>) riepilogo.get("aule");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<TotaleOccupazioneGiorno> giorni(Map<String, Object> riepilogo) {
+        return (List<TotaleOccupazioneGiorno>) riepilogo.get("giorni");
+    }
+
+    private Aula nuovaAula(String nome) {
+        return aulaRepository.save(DatiDiProva.aula(nome));
+    }
+
+    private Utente nuovoUtente(String username) {
+        return utenteRepository.save(DatiDiProva.utente(username, "user"));
+    }
+}
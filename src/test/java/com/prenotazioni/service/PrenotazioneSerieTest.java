@@ -0,0 +1,95 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.DatiDiProva;
+import com.prenotazioni.dto.RegolaRicorrenza;
+import com.prenotazioni.dto.RisultatoSerie;
+import com.prenotazioni.model.Aula;
+import com.prenotazioni.model.Prenotazione;
+import com.prenotazioni.model.Utente;
+import com.prenotazioni.repository.AulaRepository;
+import com.prenotazioni.repository.PrenotazioneRepository;
+import com.prenotazioni.repository.UtenteRepository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class PrenotazioneSerieTest {
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private DisponibilitaIndex disponibilitaIndex;
+
+    @Autowired
+    private AulaRepository aulaRepository;
+
+    @Autowired
+    private UtenteRepository utenteRepository;
+
+    @Autowired
+    private PrenotazioneRepository prenotazioneRepository;
+
+    @Test
+    void serieRestituisceGliIdGeneratiDalDatabase() {
+        Long aulaId = nuovaAula("Serie").getId();
+        Long utenteId = nuovoUtente("serie").getId();
+        LocalDateTime inizio = LocalDate.now().plusDays(60).atTime(9, 0);
+        List<RegolaRicorrenza.Occorrenza> occorrenze = RegolaRicorrenza.daParametri("WEEKLY", 1, 5, null)
+            .espandi(inizio, inizio.plusHours(2));
+
+        RisultatoSerie risultato = prenotazioneService.prenotaSerie(aulaId, null, utenteId, occorrenze, "serie");
+
+        assertNotNull(risultato);
+        assertEquals(5, risultato.prenotazioni().size());
+        for (int i = 0; i < occorrenze.size(); i++) {
+            Prenotazione creata = risultato.prenotazioni().get(i);
+            Prenotazione salvata = prenotazioneRepository.findById(creata.getId()).orElseThrow();
+            assertEquals(occorrenze.get(i).inizio(), salvata.getInizio());
+            assertEquals(aulaId, salvata.getAula().getId());
+            assertFalse(disponibilitaIndex.isLibera(aulaId, salvata.getInizio(), salvata.getFine()));
+        }
+    }
+
+    @Test
+    void occorrenzePiuLungheDelPassoSonoRifiutate() {
+        LocalDateTime inizio = LocalDate.now().plusDays(60).atTime(9, 0);
+        RegolaRicorrenza giornaliera = RegolaRicorrenza.daParametri("DAILY", 1, 3, null);
+
+        assertThrows(IllegalArgumentException.class, () -> giornaliera.espandi(inizio, inizio.plusHours(25)));
+        assertEquals(3, giornaliera.espandi(inizio, inizio.plusHours(24)).size()); // Occorrenze contigue
+
+        List<RegolaRicorrenza.Occorrenza> sovrapposte = List.of(
+            new RegolaRicorrenza.Occorrenza(inizio, inizio.plusHours(3)),
+            new RegolaRicorrenza.Occorrenza(inizio.plusHours(2), inizio.plusHours(5)));
+        assertNull(prenotazioneService.prenotaSerie(nuovaAula("Serie sovrapposta").getId(), null,
+            nuovoUtente("sovrapposta").getId(), sovrapposte, "serie"));
+    }
+
+    @Test
+    void frequenzaMancanteNonValida() {
+        assertThrows(IllegalArgumentException.class, () -> RegolaRicorrenza.daParametri(null, 1, 3, null));
+    }
+
+    private Aula nuovaAula(String nome) {
+        return aulaRepository.save(DatiDiProva.aula(nome));
+    }
+
+    private Utente nuovoUtente(String username) {
+        return utenteRepository.save(DatiDiProva.utente(username, "user"));
+    }
+}
@@ -0,0 +1,103 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.DatiDiProva;
+import com.prenotazioni.model.Prenotazione;
+import com.prenotazioni.repository.AulaRepository;
+import com.prenotazioni.repository.UtenteRepository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Migliaia di prenotazioni in parallelo sulle stesse aule e negli stessi orari: nessuna sovrapposizione
+// sul database e l'indice delle disponibilità contiene esattamente le prenotazioni riuscite
+@SpringBootTest
+@ActiveProfiles("test")
+class PrenotazioniConcorrentiTest {
+
+    private static final int THREAD = 32;
+    private static final int TENTATIVI_PER_THREAD = 100;
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private DisponibilitaIndex disponibilitaIndex;
+
+    @Autowired
+    private AulaRepository aulaRepository;
+
+    @Autowired
+    private UtenteRepository utenteRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void prenotazioniParalleleNonSiSovrappongono() throws Exception {
+        List<Long> aulaIds = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            aulaIds.add(aulaRepository.save(DatiDiProva.aula("Stress " + i)).getId());
+        }
+        Long utenteId = utenteRepository.save(DatiDiProva.utente("stress", "user")).getId();
+
+        LocalDateTime giorno = LocalDate.now().plusDays(30).atStartOfDay();
+        AtomicInteger riuscite = new AtomicInteger();
+        List<Prenotazione> salvate = Collections.synchronizedList(new ArrayList<>());
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREAD);
+        List<Future<?>> lavori = new ArrayList<>();
+        for (int t = 0; t < THREAD; t++) {
+            Random random = new Random(t);
+            lavori.add(pool.submit(() -> {
+                for (int i = 0; i < TENTATIVI_PER_THREAD; i++) {
+                    Long aulaId = aulaIds.get(random.nextInt(aulaIds.size()));
+                    LocalDateTime inizio = giorno.plusMinutes(15L * random.nextInt(96));
+                    LocalDateTime fine = inizio.plusMinutes(15L * (1 + random.nextInt(8)));
+                    Prenotazione prenotazione = prenotazioneService.prenotaAula(aulaId, null, utenteId, inizio, fine, "stress");
+                    if (prenotazione != null) {
+                        riuscite.incrementAndGet();
+                        salvate.add(prenotazione);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> lavoro : lavori) {
+            lavoro.get();
+        }
+        pool.shutdown();
+
+        assertTrue(riuscite.get() > 0);
+        Integer sovrapposizioni = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM prenotazione a JOIN prenotazione b ON a.aula_id = b.aula_id AND a.id < b.id"
+                + " AND a.inizio < b.fine AND b.inizio < a.fine"
+                + " WHERE a.stato <> 'ANNULLATA' AND b.stato <> 'ANNULLATA' AND a.descrizione = 'stress'",
+            Integer.class);
+        assertEquals(0, sovrapposizioni);
+        Integer salvateSulDatabase = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM prenotazione WHERE descrizione = 'stress'", Integer.class);
+        assertEquals(riuscite.get(), salvateSulDatabase);
+
+        for (Prenotazione prenotazione : salvate) {
+            assertFalse(disponibilitaIndex.isLibera(prenotazione.getAula().getId(), prenotazione.getInizio(), prenotazione.getFine()));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.DatiDiProva;
+import com.prenotazioni.PrenotazioniAuleBackendApplication;
+import com.prenotazioni.dto.AulaRequest;
+import com.prenotazioni.model.Aula;
+import com.prenotazioni.model.Prenotazione;
+import com.prenotazioni.model.Prenotazione.StatoPrenotazione;
+import com.prenotazioni.model.Utente;
+import com.prenotazioni.repository.AulaRepository;
+import com.prenotazioni.repository.PrenotazioneRepository;
+import com.prenotazioni.repository.UtenteRepository;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Due istanze dell'applicazione (due contesti Spring) sullo stesso database H2 in memoria prenotano in
+// parallelo la stessa aula, con il riallineamento dell'indice ogni 20 ms che corre insieme alle prenotazioni:
+// sul database non ci sono sovrapposizioni e ogni prenotazione riuscita è subito visibile nell'indice
+// dell'istanza che l'ha fatta. Le aule create su un'istanza arrivano nel catalogo dell'altra con il suo
+// controllo periodico, anch'esso ogni 20 ms
+class PrenotazioniDueIstanzeTest {
+
+    private static final String DATABASE = "jdbc:h2:mem:dueistanze;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private static ConfigurableApplicationContext istanzaA;
+    private static ConfigurableApplicationContext istanzaB;
+
+    @BeforeAll
+    static void avvia() {
+        istanzaA = avviaIstanza();
+        istanzaB = avviaIstanza();
+    }
+
+    @AfterAll
+    static void chiudi() {
+        istanzaA.close();
+        istanzaB.close();
+    }
+
+    private static ConfigurableApplicationContext avviaIstanza() {
+        return new SpringApplicationBuilder(PrenotazioniAuleBackendApplication.class)
+            .profiles("test")
+            .run("--server.port=0", "--spring.datasource.url=" + DATABASE, "--prenotazioni.indice.resync-ms=20",
+                "--prenotazioni.catalogo.controllo-ms=20");
+    }
+
+    @Test
+    void prenotazioniConcorrentiDaDueIstanzeNonSiSovrappongono() throws Exception {
+        Aula aula = istanzaA.getBean(AulaRepository.class).save(DatiDiProva.aula("Aula condivisa"));
+        Utente utente = istanzaA.getBean(UtenteRepository.class).save(DatiDiProva.utente("docente", "user"));
+
+        Long aulaId = aula.getId();
+        Long utenteId = utente.getId();
+        LocalDateTime giorno = LocalDate.now().plusDays(10).atStartOfDay();
+        Queue<String> errori = new ConcurrentLinkedQueue<>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        List<Future<?>> tentativi = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            ConfigurableApplicationContext istanza = t % 2 == 0 ? istanzaA : istanzaB;
+            Random random = new Random(t);
+            tentativi.add(pool.submit(() -> {
+                PrenotazioneService service = istanza.getBean(PrenotazioneService.class);
+                DisponibilitaIndex indice = istanza.getBean(DisponibilitaIndex.class);
+                for (int i = 0; i < 25; i++) {
+                    LocalDateTime inizio = giorno.plusMinutes(30L * random.nextInt(96));
+                    LocalDateTime fine = inizio.plusMinutes(30L * (1 + random.nextInt(6)));
+                    Prenotazione prenotazione = service.prenotaAula(aulaId, null, utenteId, inizio, fine, "test");
+                    if (prenotazione != null && indice.isLibera(aulaId, inizio, fine)) {
+                        errori.add("Prenotazione " + prenotazione.getId() + " assente dall'indice della sua istanza");
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> tentativo : tentativi) {
+            tentativo.get();
+        }
+        pool.shutdown();
+
+        List<Prenotazione> salvate = new ArrayList<>(istanzaA.getBean(PrenotazioneRepository.class).findAll());
+        salvate.removeIf(p -> p.getStato() == StatoPrenotazione.ANNULLATA);
+        salvate.sort(Comparator.comparing(Prenotazione::getInizio));
+        assertFalse(salvate.isEmpty());
+        for (int i = 1; i < salvate.size(); i++) {
+            Prenotazione precedente = salvate.get(i - 1);
+            Prenotazione successiva = salvate.get(i);
+            assertFalse(successiva.getInizio().isBefore(precedente.getFine()),
+                "Sovrapposizione tra le prenotazioni " + precedente.getId() + " e " + successiva.getId());
+        }
+        assertTrue(errori.isEmpty(), String.join("\n", errori));
+
+        // Dopo il riallineamento entrambe le istanze vedono tutte le prenotazioni, comprese quelle dell'altra
+        for (ConfigurableApplicationContext istanza : List.of(istanzaA, istanzaB)) {
+            DisponibilitaIndex indice = istanza.getBean(DisponibilitaIndex.class);
+            indice.riallinea();
+            for (Prenotazione prenotazione : salvate) {
+                assertFalse(indice.isLibera(aulaId, prenotazione.getInizio(), prenotazione.getFine()));
+            }
+        }
+    }
+
+    // Il catalogo dell'altra istanza si aggiorna senza attendere il riallineamento dell'indice, e alla
+    // stessa versione le due istanze danno lo stesso ETag
+    @Test
+    void aulaCreataSuUnaIstanzaArrivaNelCatalogoDellAltra() throws Exception {
+        Aula creata = istanzaA.getBean(AulaService.class).createAula(new AulaRequest("Aula replicata", 30, 1));
+        AulaService catalogoB = istanzaB.getBean(AulaService.class);
+        long scadenza = System.currentTimeMillis() + 5000;
+        while (catalogoB.getAulaById(creata.getId()).isEmpty() && System.currentTimeMillis() < scadenza) {
+            Thread.sleep(20);
+        }
+        assertTrue(catalogoB.getAulaById(creata.getId()).isPresent());
+        assertEquals(istanzaA.getBean(VersioniDati.class).etagCatalogo(), istanzaB.getBean(VersioniDati.class).etagCatalogo());
+    }
+}
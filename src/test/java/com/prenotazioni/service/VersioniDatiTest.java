@@ -0,0 +1,117 @@
+package com.prenotazioni.service;
+
+import com.prenotazioni.DatiDiProva;
+import com.prenotazioni.dto.AulaRequest;
+import com.prenotazioni.dto.RegisterRequest;
+import com.prenotazioni.model.Aula;
+import com.prenotazioni.model.Utente;
+import com.prenotazioni.repository.UtenteRepository;
+import com.prenotazioni.repository.VersioniRepository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class VersioniDatiTest {
+
+    @Autowired
+    private VersioniDati versioniDati;
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private UtenteRepository utenteRepository;
+
+    @Autowired
+    private AulaService aulaService;
+
+    @Autowired
+    private PrenotazioneService prenotazioneService;
+
+    @Autowired
+    private VersioniRepository versioniRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Le versioni stanno sul database: una prenotazione cambia l'ETag senza passare da stato locale all'istanza
+    @Test
+    void prenotazioneCambiaLaVersioneSulDatabase() {
+        Utente utente = nuovoUtente("etag.prenota");
+        Aula aula = aulaService.createAula(new AulaRequest("Aula ETag", 10, 1));
+        assertNotNull(aula);
+        String prenotazioni = versioniDati.etagPrenotazioni(false);
+        long versione = versioniRepository.leggi().get(VersioniRepository.PRENOTAZIONI);
+
+        LocalDateTime inizio = LocalDate.now().plusDays(120).atTime(9, 0);
+        assertNotNull(prenotazioneService.prenotaAula(aula.getId(), null, utente.getId(), inizio, inizio.plusHours(1), "etag"));
+
+        assertEquals(versione + 1, versioniRepository.leggi().get(VersioniRepository.PRENOTAZIONI));
+        assertNotEquals(prenotazioni, versioniDati.etagPrenotazioni(false));
+    }
+
+    // Il catalogo porta la versione AULE del database: una modifica di un'altra istanza (qui simulata
+    // incrementando solo la versione) rende l'ETag diverso finché il catalogo non viene riletto
+    @Test
+    void catalogoVersionatoDalDatabase() {
+        assertNotNull(aulaService.createAula(new AulaRequest("Aula Catalogo ETag", 10, 2)));
+        long versione = versioniRepository.leggi(VersioniRepository.AULE);
+        assertEquals("c" + versione, versioniDati.etagCatalogo());
+
+        transactionTemplate.executeWithoutResult(status -> versioniRepository.incrementa(VersioniRepository.AULE));
+        assertEquals("c" + versione, versioniDati.etagCatalogo());
+
+        aulaService.ricaricaCatalogo();
+        assertEquals("c" + (versione + 1), versioniDati.etagCatalogo());
+    }
+
+    // Il login aggiorna solo l'ultimo accesso: cambiano gli ETag delle viste con l'utente completo, non degli elenchi
+    @Test
+    void loginCambiaSoloIDettagli() {
+        Utente utente = nuovoUtente("etag");
+        String prenotazioni = versioniDati.etagPrenotazioni(false);
+        String dettagli = versioniDati.etagDettagli(false);
+
+        assertNotNull(authService.login(utente.getEmail(), utente.getPassword()));
+
+        assertEquals(prenotazioni, versioniDati.etagPrenotazioni(false));
+        assertNotEquals(dettagli, versioniDati.etagDettagli(false));
+    }
+
+    // Un cambio di username compare anche negli elenchi sintetici
+    @Test
+    void modificaUtenteCambiaTutto() {
+        Utente utente = nuovoUtente("etag.modifica");
+        String prenotazioni = versioniDati.etagPrenotazioni(false);
+        String dettagli = versioniDati.etagDettagli(false);
+
+        RegisterRequest modifica = new RegisterRequest();
+        modifica.setEmail(utente.getEmail());
+        modifica.setNome("Rinominato");
+        modifica.setPassword(utente.getPassword());
+        modifica.setRuolo(utente.getRuolo());
+        modifica.setUsername("etag.rinominato");
+        assertNotNull(authService.updateUtente(utente.getId(), modifica));
+
+        assertNotEquals(prenotazioni, versioniDati.etagPrenotazioni(false));
+        assertNotEquals(dettagli, versioniDati.etagDettagli(false));
+    }
+
+    private Utente nuovoUtente(String username) {
+        Utente utente = DatiDiProva.utente(username, "user");
+        utente.setPassword("segreta");
+        return utenteRepository.save(utente);
+    }
+}